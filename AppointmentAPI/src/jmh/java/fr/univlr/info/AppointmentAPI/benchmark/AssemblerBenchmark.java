@@ -0,0 +1,56 @@
+package fr.univlr.info.AppointmentAPI.benchmark;
+
+import fr.univlr.info.AppointmentAPIV1.controller.AppointmentController;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.AppointmentModelAssembler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+/**
+ * HAL model of one appointment, by the assembler and by linkTo(methodOn(...)) for each link
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AssemblerBenchmark {
+
+    // The appointment model assembler
+    private AppointmentModelAssembler assembler;
+    // An appointment that can still be cancelled
+    private Appointment appt;
+
+    @Setup
+    public void setUp() {
+        assembler = new AppointmentModelAssembler();
+        long now = System.currentTimeMillis();
+        appt = new Appointment(42L, "jdoe", new Date(now + 3600_000L), new Date(now + 7200_000L), "patient");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public EntityModel<Appointment> toModel() {
+        return assembler.toModel(appt);
+    }
+
+    @Benchmark
+    public EntityModel<Appointment> linkToMethodOn() {
+        return EntityModel.of(appt,
+                linkTo(methodOn(AppointmentController.class).one(appt.getId(), null)).withSelfRel(),
+                linkTo(methodOn(AppointmentController.class).all(null, null, null, null)).withRel("appointments"),
+                linkTo(methodOn(AppointmentController.class).cancel(appt.getId(), null)).withRel("cancel"));
+    }
+}
@@ -0,0 +1,109 @@
+package fr.univlr.info.AppointmentAPI.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.AppointmentModelAssembler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.core.DefaultLinkRelationProvider;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Encoding and decoding of a list of appointments in each representation, as returned by GET /api/appointments
+ * The payload size of each representation is printed by the setup of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinaryFormatBenchmark {
+
+    // The representation
+    @Param({"json", "hal", "cbor", "smile"})
+    public String format;
+
+    // The number of appointments of the list
+    @Param({"100", "10000"})
+    public int size;
+
+    // The writer and the reader of the list, configured like the ones of the application
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    // The list, the HAL model for HAL
+    private Object body;
+    // The encoded list
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Appointment> appts = new ArrayList<>(size);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            appts.add(new Appointment((long) i, "doctor" + (i % 100), new Date(now + i * 3600_000L),
+                    new Date(now + (i + 1) * 3600_000L), "patient" + i));
+        }
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_ABSENT);
+        switch (format) {
+            case "hal":
+                ObjectMapper hal = builder.modulesToInstall(new Jackson2HalModule())
+                        .handlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                                new DefaultLinkRelationProvider(), CurieProvider.NONE, MessageResolver.DEFAULTS_ONLY))
+                        .build();
+                writer = hal.writer();
+                reader = hal.readerFor(new TypeReference<CollectionModel<EntityModel<Appointment>>>() {});
+                // The links are built from the current request
+                RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+                AppointmentModelAssembler assembler = new AppointmentModelAssembler();
+                body = CollectionModel.of(appts.stream().map(assembler::toModel).collect(Collectors.toList()));
+                RequestContextHolder.resetRequestAttributes();
+                break;
+            case "cbor":
+                builder.factory(new CBORFactory());
+                break;
+            case "smile":
+                builder.factory(new SmileFactory());
+                break;
+            default:
+                break;
+        }
+        if (writer == null) {
+            ObjectMapper mapper = builder.build();
+            writer = mapper.writerFor(Appointment[].class);
+            reader = mapper.readerFor(Appointment[].class);
+            body = appts.toArray(new Appointment[0]);
+        }
+        payload = writer.writeValueAsBytes(body);
+        System.out.printf("%n%s, %d appointments: %d bytes (%d bytes per appointment)%n",
+                format, size, payload.length, payload.length / size);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return writer.writeValueAsBytes(body);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return reader.readValue(payload);
+    }
+}
@@ -0,0 +1,70 @@
+package fr.univlr.info.AppointmentAPI.benchmark;
+
+import fr.univlr.info.AppointmentAPIV1.model.TimeWindow;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentSlot;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorScheduleIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overlap check of a new appointment against the schedule of its doctor, as done by newAppointment,
+ * and free windows of a week of the schedule, as done by getDoctorAvailability
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OverlapBenchmark {
+
+    private static final long HOUR = 3600_000L;
+
+    // The number of appointments of the doctor
+    @Param({"1", "1000", "100000"})
+    public int size;
+
+    // The index of the schedules
+    private DoctorScheduleIndex index;
+
+    @Setup
+    public void setUp() {
+        // One hour appointments, every other hour
+        List<AppointmentSlot> slots = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            slots.add(slot(i, 2 * i * HOUR, (2 * i + 1) * HOUR));
+        }
+        // Only findSlotsByDoctorId is called, when the schedule is first loaded
+        AppointmentRepository repository = (AppointmentRepository) Proxy.newProxyInstance(
+                AppointmentRepository.class.getClassLoader(), new Class<?>[]{AppointmentRepository.class},
+                (proxy, method, args) -> slots);
+        index = new DoctorScheduleIndex(repository);
+        index.overlaps(1L, new Date(0), new Date(1));
+    }
+
+    private static AppointmentSlot slot(long id, long start, long end) {
+        return new AppointmentSlot() {
+            public Long getId() { return id; }
+            public Date getStartDate() { return new Date(start); }
+            public Date getEndDate() { return new Date(end); }
+        };
+    }
+
+    @Benchmark
+    public boolean overlaps() {
+        // Half an hour at a random place of the schedule, overlapping an appointment one time out of two
+        long start = ThreadLocalRandom.current().nextLong(2L * size) * HOUR + HOUR / 4;
+        return index.overlaps(1L, new Date(start), new Date(start + HOUR / 2));
+    }
+
+    @Benchmark
+    public List<TimeWindow> freeWindows() {
+        // A week at a random place of the schedule, 84 appointments when the schedule is long enough
+        long from = ThreadLocalRandom.current().nextLong(2L * size) * HOUR;
+        return index.freeWindows(1L, new Date(from), new Date(from + 168 * HOUR), HOUR / 2);
+    }
+}
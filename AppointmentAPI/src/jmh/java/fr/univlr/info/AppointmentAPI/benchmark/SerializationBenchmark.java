@@ -0,0 +1,77 @@
+package fr.univlr.info.AppointmentAPI.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of a list of appointments, as returned by GET /api/appointments
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    // The number of appointments of the list
+    @Param({"1", "1000", "100000"})
+    public int size;
+
+    // The writer, configured like the one of the application
+    private ObjectWriter writer;
+    // The appointments
+    private List<Appointment> appts;
+
+    @Setup
+    public void setUp() {
+        writer = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_ABSENT)
+                .build()
+                .writerFor(Appointment[].class);
+        appts = new ArrayList<>(size);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            appts.add(new Appointment((long) i, "doctor" + (i % 100), new Date(now + i * 3600_000L),
+                    new Date(now + (i + 1) * 3600_000L), "patient" + i));
+        }
+    }
+
+    @Benchmark
+    public byte[] toBytes() throws IOException {
+        return writer.writeValueAsBytes(appts.toArray(new Appointment[0]));
+    }
+
+    @Benchmark
+    public long toStream() throws IOException {
+        // Written to a counting stream, like a response body without the buffering
+        CountingOutputStream out = new CountingOutputStream();
+        writer.writeValue(out, appts.toArray(new Appointment[0]));
+        return out.count;
+    }
+
+    /**
+     * Output stream counting the bytes written
+     */
+    private static class CountingOutputStream extends OutputStream {
+        // The number of bytes written
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fr.univlr.info.AppointmentAPI.benchmark;
+
+import fr.univlr.info.AppointmentAPIV1.controller.AppointmentDateValidator;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.openjdk.jmh.annotations.*;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of an appointment, by the date validator alone and by the whole bean validation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValidatorBenchmark {
+
+    // The date validator
+    private AppointmentDateValidator dateValidator;
+    // The bean validation factory
+    private ValidatorFactory factory;
+    // The bean validator, as used by @Valid
+    private Validator validator;
+    // An appointment with coherent dates
+    private Appointment valid;
+    // An appointment ending before it starts
+    private Appointment invalid;
+
+    @Setup
+    public void setUp() {
+        dateValidator = new AppointmentDateValidator();
+        factory = Validation.buildDefaultValidatorFactory();
+        validator = factory.getValidator();
+        long now = System.currentTimeMillis();
+        valid = new Appointment("jdoe", new Date(now + 3600_000L), new Date(now + 7200_000L), "patient");
+        invalid = new Appointment("jdoe", new Date(now + 7200_000L), new Date(now + 3600_000L), "patient");
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        // The context is only used to report a violation, a valid appointment never touches it
+        return dateValidator.isValid(valid, null);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Appointment>> validateValid() {
+        return validator.validate(valid);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<Appointment>> validateInvalid() {
+        return validator.validate(invalid);
+    }
+}
@@ -2,8 +2,10 @@ package fr.univlr.info.AppointmentAPIV1;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class AppointmentApiApplication {
 
 	public static void main(String[] args) {
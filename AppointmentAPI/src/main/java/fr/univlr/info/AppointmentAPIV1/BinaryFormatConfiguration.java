@@ -0,0 +1,120 @@
+package fr.univlr.info.AppointmentAPIV1;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import fr.univlr.info.AppointmentAPIV1.model.Representation;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the resources as CBOR (application/cbor) and Smile (application/x-jackson-smile) too
+ * The binary mappers are built by the Jackson builder of Spring Boot, so they follow the spring.jackson
+ * properties like the JSON one. The Accept header picks the representation, see {@link Representation}.
+ */
+@Configuration
+public class BinaryFormatConfiguration {
+
+    /**
+     * Creates the CBOR converter of the servlet stack
+     * @param builders the builders of the Jackson mappers
+     * @return the converter
+     */
+    @Bean
+    @Profile("!reactive")
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        return new MappingJackson2CborHttpMessageConverter(mapper(builders, new CBORFactory()));
+    }
+
+    /**
+     * Creates the Smile converter of the servlet stack
+     * @param builders the builders of the Jackson mappers
+     * @return the converter
+     */
+    @Bean
+    @Profile("!reactive")
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        return new MappingJackson2SmileHttpMessageConverter(mapper(builders, new SmileFactory()));
+    }
+
+    /**
+     * Registers the CBOR and Smile codecs of the reactive stack
+     * @param builders the builders of the Jackson mappers
+     * @return the customizer of the codecs
+     */
+    @Bean
+    @Profile("reactive")
+    CodecCustomizer binaryCodecCustomizer(ObjectProvider<Jackson2ObjectMapperBuilder> builders) {
+        ObjectMapper cbor = mapper(builders, new CBORFactory());
+        ObjectMapper smile = mapper(builders, new SmileFactory());
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smile, Representation.APPLICATION_SMILE));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile, Representation.APPLICATION_SMILE));
+            configurer.customCodecs().register(new CborEncoder(cbor));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+        };
+    }
+
+    /**
+     * Builds a mapper configured like the JSON one, on another format
+     * @param builders the builders of the Jackson mappers
+     * @param factory the factory of the format
+     * @return the mapper
+     */
+    private static ObjectMapper mapper(ObjectProvider<Jackson2ObjectMapperBuilder> builders, JsonFactory factory) {
+        return builders.getObject().factory(factory).build();
+    }
+
+    /**
+     * CBOR encoder of the reactive stack writing a whole body at once
+     * The encoder of Spring Framework 5.3 only encodes single values and refuses any publisher, even a Mono:
+     * a Mono is encoded as its value, a Flux as the list of its elements.
+     */
+    static class CborEncoder extends Jackson2CborEncoder {
+
+        /**
+         * Constructor
+         * @param mapper the CBOR mapper
+         */
+        CborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       MimeType mimeType, Map<String, Object> hints) {
+            if (inputStream instanceof Mono) {
+                return ((Mono<?>) inputStream)
+                        .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                        .flux();
+            }
+            ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+            return Flux.from(inputStream)
+                    .collectList()
+                    .map(list -> encodeValue(list, bufferFactory, listType, mimeType, hints))
+                    .flux();
+        }
+    }
+}
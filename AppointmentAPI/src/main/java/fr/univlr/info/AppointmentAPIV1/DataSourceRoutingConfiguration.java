@@ -0,0 +1,119 @@
+package fr.univlr.info.AppointmentAPIV1;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import fr.univlr.info.AppointmentAPIV1.store.ReadWriteRoutingDataSource;
+import fr.univlr.info.AppointmentAPIV1.store.ReadWriteRoutingDataSource.Target;
+import fr.univlr.info.AppointmentAPIV1.store.StandInReplicator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Sends the read-only transactions to a replica, with appointment.datasource.routing.enabled=true
+ * The primary is the spring.datasource database, the replica is configured by appointment.datasource.replica.*
+ * with the same properties, and defaults to a second in-memory H2 database kept in sync by a
+ * {@link StandInReplicator}. The read-only transactions are the @Transactional(readOnly = true) methods of the
+ * controllers; a client reads from the primary for a while after its writes, see ReadYourWritesFilter.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "appointment.datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingConfiguration {
+
+    /**
+     * Creates the data source of the application, routing each transaction to the primary or to the replica
+     * The connection is only fetched by the first statement, once the transaction is known to be read-only.
+     * The pools are not beans: the auto-configuration initializes every DataSource bean with the unique
+     * one, this data source, which would then depend on itself. They are closed with it.
+     * @param properties the spring.datasource properties
+     * @param environment the environment holding the pool and replica properties
+     * @param meterRegistry the registry of the pool metrics, if any
+     * @return the data source
+     */
+    @Bean
+    DataSource dataSource(DataSourceProperties properties, Environment environment,
+                          ObjectProvider<MeterRegistry> meterRegistry) {
+        Binder binder = Binder.get(environment);
+        DataSourceProperties replicaProperties = binder
+                .bind("appointment.datasource.replica", DataSourceProperties.class)
+                .orElseGet(DataSourceProperties::new);
+        try {
+            replicaProperties.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new IllegalStateException("Invalid appointment.datasource.replica properties", e);
+        }
+        HikariDataSource primary = pool("primary", properties, binder, "spring.datasource.hikari", meterRegistry);
+        HikariDataSource replica = pool("replica", replicaProperties, binder, "appointment.datasource.replica.hikari", meterRegistry);
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica);
+        routing.afterPropertiesSet();
+        return new LazyRoutingDataSource(routing);
+    }
+
+    /**
+     * Creates the replication of the primary database to the replica, unless appointment.datasource.replica.stand-in=false
+     * @param dataSource the data source of the application
+     * @return the replicator
+     * @throws SQLException if the data source doesn't route
+     */
+    @Bean
+    @ConditionalOnProperty(name = "appointment.datasource.replica.stand-in", havingValue = "true", matchIfMissing = true)
+    StandInReplicator standInReplicator(DataSource dataSource) throws SQLException {
+        ReadWriteRoutingDataSource routing = dataSource.unwrap(ReadWriteRoutingDataSource.class);
+        return new StandInReplicator(routing.getTarget(Target.PRIMARY), routing.getTarget(Target.REPLICA));
+    }
+
+    /**
+     * Creates a connection pool
+     * @param name the pool name, tagging its metrics
+     * @param properties the connection properties
+     * @param binder the binder of the pool properties
+     * @param prefix the prefix of the pool properties
+     * @param meterRegistry the registry of the pool metrics, if any
+     * @return the pool
+     */
+    private static HikariDataSource pool(String name, DataSourceProperties properties, Binder binder, String prefix,
+                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind(prefix, Bindable.ofInstance(dataSource));
+        dataSource.setPoolName(name);
+        meterRegistry.ifAvailable(registry -> dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+        return dataSource;
+    }
+
+    /**
+     * The routing data source, fetching the connections lazily and closing the pools with the application context
+     */
+    static class LazyRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+        // The routing data source
+        private final ReadWriteRoutingDataSource routing;
+
+        /**
+         * Constructor
+         * @param routing the routing data source
+         */
+        LazyRoutingDataSource(ReadWriteRoutingDataSource routing) {
+            super(routing);
+            this.routing = routing;
+        }
+
+        @Override
+        public void close() throws IOException {
+            routing.close();
+        }
+    }
+}
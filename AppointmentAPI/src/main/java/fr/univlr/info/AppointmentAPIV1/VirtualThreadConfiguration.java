@@ -0,0 +1,35 @@
+package fr.univlr.info.AppointmentAPIV1;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the Tomcat request handling on virtual threads, one per request, with appointment.virtual-threads.enabled=true
+ * The controllers and their blocking JPA calls then run on virtual threads too, and the number of requests in
+ * flight is no longer bounded by server.tomcat.threads.max but by the connection pool
+ * (spring.datasource.hikari.maximum-pool-size).
+ * Virtual threads need a build with a JDK 21 or newer, which selects the java21 profile and compiles
+ * {@link VirtualThreads} against Executors.newVirtualThreadPerTaskExecutor. A build for Java 11 has no virtual
+ * threads: the application then refuses to start with the flag set, instead of running on the thread pool.
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "appointment.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    /**
+     * Replaces the worker thread pool of the Tomcat connector by an executor starting a virtual thread per request
+     * The executor is not a bean, which would replace the task executor of the asynchronous requests.
+     * @return the customizer of the protocol handler
+     */
+    @Bean
+    TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+}
@@ -0,0 +1,118 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit of the requests in flight, adapted to their latency (gradient algorithm)
+ * Two moving averages of the latency are kept: a short one, following the current load, and a long one,
+ * a hundred times slower, the latency the server can sustain. While the short one stays under the long one,
+ * the limit grows by its square root, the queue allowed in front of the database. Once it is above, the limit
+ * stops growing, and above tolerance times the long one it shrinks in proportion. During a sustained slowdown
+ * the limit stays down until the requests are fast again, so the requests queue in the limiter, where they
+ * fail fast, instead of in the connection pool, where every request waits.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // The weight of a sample in the short and the long averages of the latency
+    private static final double SHORT_WEIGHT = 0.1, LONG_WEIGHT = 0.001;
+    // The ratio of the short average to the long one tolerated before the limit shrinks
+    private static final double TOLERANCE = 2.0;
+    // The weight of a new estimate of the limit
+    private static final double SMOOTHING = 0.2;
+
+    // The bounds of the limit
+    private final int minLimit, maxLimit;
+    // The requests in flight
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // The limit
+    private volatile double limit;
+    // The moving averages of the latency, in nanoseconds, 0 before the first sample
+    private double shortLatency, longLatency;
+
+    /**
+     * Constructor
+     * @param initialLimit the initial limit
+     * @param minLimit the minimum limit
+     * @param maxLimit the maximum limit
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("The limits must satisfy 1 <= min <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Admits a request if the limit is not reached
+     * @return true if admitted, then {@link #release(long)} must be called once the request is done
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends an admitted request and adapts the limit to its latency
+     * @param latency the latency of the request, in nanoseconds
+     */
+    public void release(long latency) {
+        int current = inFlight.getAndDecrement();
+        update(Math.max(1, latency), current);
+    }
+
+    /**
+     * Ends an admitted request whose latency says nothing about the load, like a streamed export
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Adapts the limit to the latency of a request
+     * @param latency the latency, in nanoseconds
+     * @param current the requests in flight, the request included
+     */
+    private synchronized void update(long latency, int current) {
+        if (longLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+        } else {
+            shortLatency += (latency - shortLatency) * SHORT_WEIGHT;
+            longLatency += (latency - longLatency) * LONG_WEIGHT;
+        }
+        // A limit far from being reached says nothing about the capacity
+        if (current < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        // Grows only while the requests are not slower than usual
+        double queue = shortLatency <= longLatency ? Math.sqrt(limit) : 0;
+        double estimate = limit * gradient + queue;
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + estimate * SMOOTHING));
+    }
+
+    /**
+     * Gets the current limit
+     * @return the limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Gets the requests in flight
+     * @return the requests in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,240 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control of the requests to /api/**, enabled by appointment.admission.enabled=true
+ * The reads (GET, HEAD, OPTIONS) and the writes have their own limits, so that scans of the whole tables
+ * can't starve the bookings:
+ * - a token bucket by client, appointment.admission.read.rate requests by second with bursts of read.burst,
+ *   answers 429 to the client above its rate;
+ * - an adaptive limit of the requests in flight, see {@link AdaptiveConcurrencyLimiter}, between
+ *   read.min-concurrency and read.max-concurrency, answers 503 when the server is overloaded.
+ * Both answers are immediate and carry a Retry-After header. The same properties exist for write.
+ * The maximum limits default to 50 reads and 20 writes in flight, well below the 200 threads of Tomcat,
+ * so that a slow database fills the limiter before the thread pool.
+ * The client is the remote address, or the value of the appointment.admission.client-header header.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "appointment.admission.enabled", havingValue = "true")
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)   // After the metrics filter, so that the rejections are timed too
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    // The limits of the reads and of the writes
+    private final Limits reads, writes;
+    // The header identifying the client, or null for the remote address
+    private final String clientHeader;
+
+    /**
+     * Constructor
+     * @param environment the environment holding the limits
+     * @param meterRegistry the registry of the metrics
+     */
+    public AdmissionControlFilter(Environment environment, MeterRegistry meterRegistry) {
+        this.reads = new Limits("read", environment, 100, 200, 10, 50, meterRegistry);
+        this.writes = new Limits("write", environment, 20, 40, 5, 20, meterRegistry);
+        String header = environment.getProperty("appointment.admission.client-header");
+        this.clientHeader = StringUtils.hasText(header) ? header : null;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Limits limits = isRead(request) ? reads : writes;
+        long wait = limits.rate.tryAcquire(client(request));
+        if (wait > 0) {
+            limits.rateRejections.increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1);
+            return;
+        }
+        if (!limits.concurrency.tryAcquire()) {
+            limits.concurrencyRejections.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // A streamed export is in flight until its end, its duration is not a latency of the server
+                request.getAsyncContext().addListener(new ReleaseListener(limits.concurrency));
+            } else {
+                limits.concurrency.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Tells whether a request only reads the data
+     * @param request the request
+     * @return true for a GET, HEAD or OPTIONS
+     */
+    private static boolean isRead(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS;
+    }
+
+    /**
+     * Identifies the client of a request
+     * @param request the request
+     * @return the first value of the client header, or the remote address
+     */
+    private String client(HttpServletRequest request) {
+        if (clientHeader != null) {
+            String value = request.getHeader(clientHeader);
+            if (StringUtils.hasText(value)) {
+                int comma = value.indexOf(',');   // The original client of X-Forwarded-For
+                return (comma < 0 ? value : value.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Answers a rejected request
+     * @param response the response
+     * @param status the status
+     * @param retryAfter the seconds after which the client may retry
+     */
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfter) {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+    }
+
+    /**
+     * The limits of the reads or of the writes
+     */
+    private static class Limits {
+        // The rate limiter, by client
+        private final TokenBucketRateLimiter rate;
+        // The limit of the requests in flight
+        private final AdaptiveConcurrencyLimiter concurrency;
+        // The requests refused by the rate limiter and by the concurrency limiter
+        private final Counter rateRejections, concurrencyRejections;
+
+        /**
+         * Constructor
+         * @param operation read or write
+         * @param environment the environment holding the limits
+         * @param rate the default rate, by client and by second
+         * @param burst the default burst, by client
+         * @param initialConcurrency the default initial limit of the requests in flight
+         * @param maxConcurrency the default maximum limit of the requests in flight
+         * @param meterRegistry the registry of the metrics
+         */
+        Limits(String operation, Environment environment, double rate, int burst,
+               int initialConcurrency, int maxConcurrency, MeterRegistry meterRegistry) {
+            String prefix = "appointment.admission." + operation + ".";
+            this.rate = new TokenBucketRateLimiter(
+                    environment.getProperty(prefix + "rate", Double.class, rate),
+                    environment.getProperty(prefix + "burst", Integer.class, burst),
+                    environment.getProperty("appointment.admission.max-clients", Long.class, 10000L));
+            this.concurrency = new AdaptiveConcurrencyLimiter(
+                    environment.getProperty(prefix + "initial-concurrency", Integer.class, initialConcurrency),
+                    environment.getProperty(prefix + "min-concurrency", Integer.class, 1),
+                    environment.getProperty(prefix + "max-concurrency", Integer.class, maxConcurrency));
+            this.rateRejections = rejectionCounter(meterRegistry, operation, "rate");
+            this.concurrencyRejections = rejectionCounter(meterRegistry, operation, "concurrency");
+            Gauge.builder("appointment.admission.concurrency.limit", concurrency, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("Limit of the requests in flight")
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+            Gauge.builder("appointment.admission.concurrency.in-flight", concurrency, AdaptiveConcurrencyLimiter::getInFlight)
+                    .description("Requests in flight")
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * Registers the counter of the refused requests
+         * @param meterRegistry the registry of the metrics
+         * @param operation read or write
+         * @param reason rate or concurrency
+         * @return the counter
+         */
+        private static Counter rejectionCounter(MeterRegistry meterRegistry, String operation, String reason) {
+            return Counter.builder("appointment.admission.rejections")
+                    .description("Requests refused by the admission control")
+                    .tag("operation", operation)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Releases the limit of an asynchronous request once it is done, without a latency sample
+     */
+    private static class ReleaseListener implements AsyncListener {
+        // The limit of the request
+        private final AdaptiveConcurrencyLimiter concurrency;
+        // Whether the limit has been released, a timeout or an error is followed by the completion
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Constructor
+         * @param concurrency the limit of the request
+         */
+        ReleaseListener(AdaptiveConcurrencyLimiter concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        /**
+         * Releases the limit, once
+         */
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                concurrency.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Still the same request
+        }
+    }
+}
@@ -2,25 +2,60 @@ package fr.univlr.info.AppointmentAPIV1.controller;
 
 import fr.univlr.info.AppointmentAPIV1.model.Appointment;
 import fr.univlr.info.AppointmentAPIV1.model.AppointmentModelAssembler;
+import fr.univlr.info.AppointmentAPIV1.model.BatchItemResult;
+import fr.univlr.info.AppointmentAPIV1.model.BookingTicket;
 import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.model.Representation;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentExporter;
 import fr.univlr.info.AppointmentAPIV1.store.AppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.ArchivedAppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.BookingService;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorCache;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorLocks;
 import fr.univlr.info.AppointmentAPIV1.store.DoctorRepository;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorScheduleIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
-import org.springframework.hateoas.MediaTypes;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
@@ -30,113 +65,407 @@ import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
  * @author Nicole PEARSON
  *
  * The appointment controller
- * Contains all the CRUD operations
+ * Contains all the CRUD operations, on the servlet stack. The reactive profile
+ * replaces it by {@link ReactiveAppointmentController}.
  */
 @RestController
 @RequestMapping(path = "/api")
+@Profile("!reactive")
 public class AppointmentController {
 
+    // The page size when the limit parameter is not set
+    static final int DEFAULT_PAGE_SIZE = 100;
+    // The maximum page size
+    static final int MAX_PAGE_SIZE = 1000;
+    // The maximum number of appointments created by one batch
+    static final int MAX_BATCH_SIZE = 10000;
+
     // The port
     @Value("${local.server.port:8080}")
     private int port;
 
     // The appointment repository
     private final AppointmentRepository apptRepository;
+    // The archive of the appointments
+    private final ArchivedAppointmentRepository archiveRepository;
     // The doctor repository
     private final DoctorRepository doctorRepository;
+    // The cache of the doctors, by name
+    private final DoctorCache doctorCache;
+    // The index of the doctors' schedules
+    private final DoctorScheduleIndex scheduleIndex;
+    // The locks serializing the bookings of a same doctor
+    private final DoctorLocks doctorLocks;
+    // The newline delimited JSON exporter
+    private final AppointmentExporter exporter;
+    // The booking of a single appointment
+    private final BookingService bookingService;
+    // The booking queue, when the bookings are asynchronous
+    private final BookingQueue bookingQueue;
+    // The responses of the creations with an Idempotency-Key
+    private final IdempotencyStore idempotencyStore;
+    // The validator of the appointments of a batch
+    private final Validator validator;
+    // The transaction of a batch
+    private final TransactionTemplate transaction;
     // The appointment model assembler
     private final AppointmentModelAssembler assembler;
+    // The bookings refused because of an overlap, by a single or a batch creation
+    private final Counter singleConflicts, batchConflicts;
+    // The appointments of a batch refused by the validation
+    private final Counter batchValidationFailures;
 
     /**
      * Constructor
      *
      * @param apptRepository   the appointment repository
+     * @param archiveRepository the archive of the appointments
      * @param doctorRepository the doctor repository
+     * @param doctorCache the cache of the doctors, by name
+     * @param scheduleIndex the index of the doctors' schedules
+     * @param doctorLocks the locks serializing the bookings of a same doctor
+     * @param exporter the newline delimited JSON exporter
+     * @param bookingService the booking of a single appointment
+     * @param bookingQueue the booking queue, if appointment.booking-queue.enabled is set
+     * @param idempotencyStore the responses of the creations with an Idempotency-Key
+     * @param validator the validator of the appointments of a batch
+     * @param transactionManager the transaction manager
+     * @param meterRegistry the registry of the metrics
      */
-    public AppointmentController(AppointmentRepository apptRepository, DoctorRepository doctorRepository) {
+    public AppointmentController(AppointmentRepository apptRepository, ArchivedAppointmentRepository archiveRepository,
+                                 DoctorRepository doctorRepository,
+                                 DoctorCache doctorCache, DoctorScheduleIndex scheduleIndex, DoctorLocks doctorLocks,
+                                 AppointmentExporter exporter, BookingService bookingService,
+                                 ObjectProvider<BookingQueue> bookingQueue, IdempotencyStore idempotencyStore,
+                                 Validator validator, PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
         this.apptRepository = apptRepository;
+        this.archiveRepository = archiveRepository;
         this.doctorRepository = doctorRepository;
+        this.doctorCache = doctorCache;
+        this.scheduleIndex = scheduleIndex;
+        this.doctorLocks = doctorLocks;
+        this.exporter = exporter;
+        this.bookingService = bookingService;
+        this.bookingQueue = bookingQueue.getIfAvailable();
+        this.idempotencyStore = idempotencyStore;
+        this.validator = validator;
+        this.transaction = new TransactionTemplate(transactionManager);
         // Creates the appointment model assembler
         this.assembler = new AppointmentModelAssembler();
+        this.singleConflicts = conflictCounter(meterRegistry, "single");
+        this.batchConflicts = conflictCounter(meterRegistry, "batch");
+        this.batchValidationFailures = AppointmentIncoherentAdvice.validationFailureCounter(meterRegistry, "batch");
+    }
+
+    /**
+     * Registers the counter of the bookings refused because of an overlap
+     * @param meterRegistry the registry of the metrics
+     * @param operation the creation: single or batch
+     * @return the counter
+     */
+    static Counter conflictCounter(MeterRegistry meterRegistry, String operation) {
+        return Counter.builder("appointment.booking.conflicts")
+                .description("Bookings refused because they overlap an appointment of the doctor")
+                .tag("operation", operation)
+                .register(meterRegistry);
     }
 
     /**
      * Get all appointments
+     * When the limit or after parameter is set, returns one page of appointments sorted by id,
+     * starting after the given id (keyset pagination, no OFFSET scan).
+     * @param date only the appointments starting after this date
+     * @param after only the appointments with an id greater than this one
+     * @param limit the maximum number of appointments to return
      * @return a list of appointments
      */
     @GetMapping("/appointments")
-    public ResponseEntity<?> all(@RequestParam(name = "date", required = false) String date, @RequestHeader(value="Accept", required=false) String halContent) {
-        List<Appointment> appts = apptRepository.findAll(); // Finds all appointments
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> all(@RequestParam(name = "date", required = false) String date,
+                                 @RequestParam(name = "after", required = false) Long after,
+                                 @RequestParam(name = "limit", required = false) Integer limit,
+                                 @RequestHeader(value="Accept", required=false) String halContent) {
+        Date afterDate = null;
         // Check if the date parameter is set
         if(date != null) {
-            // Finds all appointments after the date specified
             try{
-                appts = apptRepository.findByAfterDate(Date.from(LocalDateTime.parse(date).atZone(java.time.ZoneId.systemDefault()).toInstant()));
+                afterDate = parseDate(date);
             } catch (Exception e) {
                 return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid date format, returns status code
             }
+        }
+        // Check if a page is requested
+        if(after != null || limit != null) {
+            return page(date, afterDate, after, limit, halContent);
+        }
 
+        List<Appointment> appts;
+        if(afterDate != null) {
+            appts = apptRepository.findByAfterDate(afterDate); // Finds all appointments after the date specified
+        } else {
+            appts = apptRepository.findAllViews(); // Finds all appointments
         }
         // Check if the Accept header is set to HAL
-        if (MediaTypes.HAL_JSON_VALUE.equals(halContent) && halContent != null) {
+        if (Representation.negotiate(halContent).isHal()) {
             // Converts the list of appointments to a list of entity models
             List<EntityModel<Appointment>> halAppts = appts.stream().map(assembler::toModel).collect(Collectors.toList());
             // Returns the list of entity models and status code
             return new ResponseEntity<>(CollectionModel.of(halAppts,
-                    linkTo(methodOn(AppointmentController.class).all(null ,null)).withSelfRel()),
+                    linkTo(methodOn(AppointmentController.class).all(null, null, null, null)).withSelfRel()),
                     HttpStatus.OK);
         }
 
         return new ResponseEntity<>(appts, HttpStatus.OK);  // Returns the list of appointments and status code
     }
 
+    /**
+     * Get all appointments, the archived ones included
+     * The archived appointments are read from the archive and marked as archived, sorted by id
+     * with the other ones. Pages work as for the other appointments.
+     * @param date only the appointments starting after this date
+     * @param after only the appointments with an id greater than this one
+     * @param limit the maximum number of appointments to return
+     * @return a list of appointments
+     */
+    @GetMapping(path = "/appointments", params = "includeArchived=true")
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> allIncludingArchived(@RequestParam(name = "date", required = false) String date,
+                                                  @RequestParam(name = "after", required = false) Long after,
+                                                  @RequestParam(name = "limit", required = false) Integer limit,
+                                                  @RequestHeader(value="Accept", required=false) String halContent) {
+        Date afterDate = null;
+        // Check if the date parameter is set
+        if(date != null) {
+            try{
+                afterDate = parseDate(date);
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid date format, returns status code
+            }
+        }
+        // Check if a page is requested
+        if(after != null || limit != null) {
+            return pageIncludingArchived(date, afterDate, after, limit, halContent);
+        }
+
+        List<Appointment> appts;
+        if(afterDate != null) {
+            appts = new ArrayList<>(apptRepository.findByAfterDate(afterDate));
+            appts.addAll(archiveRepository.findByAfterDate(afterDate));
+        } else {
+            appts = new ArrayList<>(apptRepository.findAllViews());
+            appts.addAll(archiveRepository.findAllViews());
+        }
+        appts.sort(Comparator.comparing(Appointment::getId));
+        // Check if the Accept header is set to HAL
+        if (Representation.negotiate(halContent).isHal()) {
+            List<EntityModel<Appointment>> halAppts = appts.stream().map(assembler::toModel).collect(Collectors.toList());
+            return new ResponseEntity<>(CollectionModel.of(halAppts, AppointmentModelAssembler.includingArchived(
+                    linkTo(methodOn(AppointmentController.class).all(null, null, null, null)).withSelfRel())),
+                    HttpStatus.OK);
+        }
+        return new ResponseEntity<>(appts, HttpStatus.OK);  // Returns the list of appointments and status code
+    }
+
+    /**
+     * Export all appointments as newline delimited JSON
+     * The appointments are streamed from the database, so the whole list is never held in memory.
+     * @param date only the appointments starting after this date
+     * @return the appointments, one JSON object per line
+     */
+    @GetMapping(path = "/appointments", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(name = "date", required = false) String date) {
+        Date afterDate = null;
+        // Check if the date parameter is set
+        if(date != null) {
+            try{
+                afterDate = parseDate(date);
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid date format, returns status code
+            }
+        }
+        final Date from = afterDate;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> exporter.export(from, out));
+    }
+
+    /**
+     * Get one page of appointments, sorted by id
+     * @param date the date parameter
+     * @param afterDate the parsed date parameter, or null
+     * @param after the id of the last appointment of the previous page, or null for the first page
+     * @param limit the page size, or null for the default one
+     * @param halContent the Accept header
+     * @return a page of appointments, with a link to the next page if there is one
+     */
+    private ResponseEntity<?> page(String date, Date afterDate, Long after, Integer limit, String halContent) {
+        if(limit != null && limit <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid page size, returns status code
+        }
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        long afterId = after == null ? Long.MIN_VALUE : after;
+        Pageable pageable = PageRequest.of(0, size, Sort.by("id"));
+        Slice<Appointment> appts;
+        if(afterDate != null) {
+            appts = apptRepository.findByStartDateAfterAndIdGreaterThan(afterDate, afterId, pageable);
+        } else {
+            appts = apptRepository.findByIdGreaterThan(afterId, pageable);
+        }
+        // Check if the Accept header is set to HAL
+        if (Representation.negotiate(halContent).isHal()) {
+            return new ResponseEntity<>(assembler.toSliceModel(appts, date, after, size), HttpStatus.OK);
+        }
+        // Plain JSON: the next page is given by a Link header
+        HttpHeaders headers = new HttpHeaders();
+        assembler.nextLink(appts, date, size).ifPresent(link -> headers.add(HttpHeaders.LINK, link.toString()));
+        return new ResponseEntity<>(appts.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Get one page of appointments, the archived ones included, sorted by id
+     * An id is either in the appointment table or in the archive, so the page is the
+     * first ones of a page of each, merged by id.
+     * @param date the date parameter
+     * @param afterDate the parsed date parameter, or null
+     * @param after the id of the last appointment of the previous page, or null for the first page
+     * @param limit the page size, or null for the default one
+     * @param halContent the Accept header
+     * @return a page of appointments, with a link to the next page if there is one
+     */
+    private ResponseEntity<?> pageIncludingArchived(String date, Date afterDate, Long after, Integer limit, String halContent) {
+        if(limit != null && limit <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid page size, returns status code
+        }
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        long afterId = after == null ? Long.MIN_VALUE : after;
+        Pageable pageable = PageRequest.of(0, size, Sort.by("id"));
+        Slice<Appointment> hot, archived;
+        if(afterDate != null) {
+            hot = apptRepository.findByStartDateAfterAndIdGreaterThan(afterDate, afterId, pageable);
+            archived = archiveRepository.findByStartDateAfterAndIdGreaterThan(afterDate, afterId, pageable);
+        } else {
+            hot = apptRepository.findByIdGreaterThan(afterId, pageable);
+            archived = archiveRepository.findByIdGreaterThan(afterId, pageable);
+        }
+        List<Appointment> merged = new ArrayList<>(hot.getContent());
+        merged.addAll(archived.getContent());
+        merged.sort(Comparator.comparing(Appointment::getId));
+        boolean hasNext = merged.size() > size || hot.hasNext() || archived.hasNext();
+        Slice<Appointment> appts = new SliceImpl<>(merged.subList(0, Math.min(size, merged.size())), pageable, hasNext);
+        // Check if the Accept header is set to HAL
+        if (Representation.negotiate(halContent).isHal()) {
+            return new ResponseEntity<>(assembler.toSliceModel(appts, date, after, size, true), HttpStatus.OK);
+        }
+        // Plain JSON: the next page is given by a Link header
+        HttpHeaders headers = new HttpHeaders();
+        assembler.nextLink(appts, date, size, true).ifPresent(link -> headers.add(HttpHeaders.LINK, link.toString()));
+        return new ResponseEntity<>(appts.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Parses the date parameter of a request
+     * @param date the date, in ISO local date time format
+     * @return the date
+     */
+    static Date parseDate(String date) {
+        return Date.from(LocalDateTime.parse(date).atZone(java.time.ZoneId.systemDefault()).toInstant());
+    }
+
     /**
      * Get an appointment by its id
+     * The response has a strong ETag. When it matches the If-None-Match header of the request,
+     * the response is a 304, without the body.
      * @param id the appointment id
      * @return the appointment
      */
     @GetMapping("/appointments/{id}")
+    @Transactional(readOnly = true)
     public ResponseEntity<?> one(@PathVariable Long id, @RequestHeader(value="Accept", required=false) String halContent) {
         // Finds the appointment by its id and throws an exception if it doesn't exist
-        Appointment appt = apptRepository.findById(id).orElseThrow(() -> new AppointmentNotFoundException(id));
-        // Check if the Accept header is set to HAL
-        if (halContent != null && MediaTypes.HAL_JSON_VALUE.equals(halContent)){
+        Appointment appt = apptRepository.findViewById(id).orElseThrow(() -> new AppointmentNotFoundException(id));
+        Representation representation = Representation.negotiate(halContent);
+        // Check if the Accept header asks for HAL
+        if (representation.isHal()){
             // Returns the entity model and status code
-            return new ResponseEntity<>(assembler.toModel(appt), HttpStatus.OK);
+            return ResponseEntity.ok().eTag(eTag(appt, representation)).body(assembler.toModel(appt));
         }
-        return new ResponseEntity<>(appt, HttpStatus.OK);   // Returns the appointment and status code
+        return ResponseEntity.ok().eTag(eTag(appt, representation)).body(appt);   // Returns the appointment and status code
+    }
+
+    /**
+     * Get an appointment, from the archive if it has been archived
+     * @param id the appointment id
+     * @return the appointment
+     */
+    @GetMapping(path = "/appointments/{id}", params = "includeArchived=true")
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> oneIncludingArchived(@PathVariable Long id, @RequestHeader(value="Accept", required=false) String halContent) {
+        // Finds the appointment by its id, then in the archive, and throws an exception if it doesn't exist
+        Appointment appt = apptRepository.findViewById(id)
+                .or(() -> archiveRepository.findViewById(id))
+                .orElseThrow(() -> new AppointmentNotFoundException(id));
+        Representation representation = Representation.negotiate(halContent);
+        if (representation.isHal()){
+            return ResponseEntity.ok().eTag(eTag(appt, representation)).body(assembler.toModel(appt));
+        }
+        return ResponseEntity.ok().eTag(eTag(appt, representation)).body(appt);
+    }
+
+    /**
+     * Gets the ETag of an appointment
+     * The HAL representation also depends on whether the appointment has started, as a started
+     * appointment has no cancel link.
+     * @param appt the appointment
+     * @param representation the representation of the response
+     * @return the strong ETag
+     */
+    static String eTag(Appointment appt, Representation representation) {
+        String tag = "appointment-" + appt.getId() + "-" + appt.getVersion() + representation.getETagSuffix();
+        if (representation.isHal() && new Date().after(appt.getStartDate())) {
+            tag += "-started";
+        }
+        return "\"" + tag + "\"";
     }
 
     /**
      * Create a new appointment
+     * When the booking queue is enabled, the appointment is queued and the response is a 202 with
+     * the pending ticket, whose status is at the URI of the Location header.
+     * A retry with the Idempotency-Key header of a previous request gets the response of that request,
+     * without booking again, see {@link IdempotencyStore}.
      * @param appt the appointment
-     * @return the appointment just created
+     * @param idempotencyKey the Idempotency-Key header
+     * @param client the HTTP request, whose client scopes the Idempotency-Key
+     * @return the appointment just created, or the ticket of the queued booking
      */
     @PostMapping("/appointments")
-    ResponseEntity<?> newAppointment(@Valid @RequestBody Appointment appt, @RequestHeader(value="Accept", required=false) String halContent) {
+    ResponseEntity<?> newAppointment(@Valid @RequestBody Appointment appt, @RequestHeader(value="Accept", required=false) String halContent,
+                                     @RequestHeader(value=IdempotencyStore.IDEMPOTENCY_KEY, required=false) String idempotencyKey,
+                                     HttpServletRequest client) {
+        // The key is bound to the booking and to the representation of the response
+        List<Object> request = Arrays.asList(appt.getDoctor(), appt.getStartDate(), appt.getEndDate(), appt.getPatient(),
+                Representation.negotiate(halContent));
+        return idempotencyStore.execute(idempotencyKey, client, request, () -> book(appt, halContent));
+    }
+
+    /**
+     * Book or queue a new appointment
+     * @param appt the appointment, validated
+     * @param halContent the Accept header
+     * @return the appointment just created, or the ticket of the queued booking
+     */
+    private ResponseEntity<?> book(Appointment appt, String halContent) {
         HttpHeaders headers = new HttpHeaders();    // Creates an instance of HttpHeaders
-        Doctor doctor = doctorRepository.findByName(appt.getDoctor()); // Finds the doctor by its name
-        // Check if the doctor exists
-        if(doctor == null) {
-            doctor = new Doctor(appt.getDoctor());  // Creates a new doctor if it doesn't exist
-            doctorRepository.save(doctor);  // Saves the doctor
-        }
-
-        // Loop through the doctor's appointments
-        for(Appointment appointment : doctor.getAppointments()) {
-            // Check that the new appointment doesn't overlap with an existing appointment
-            if(appointment.getStartDate().equals(appt.getStartDate()) ||
-                    appointment.getEndDate().equals(appt.getEndDate()) ||
-                    (appointment.getStartDate().after(appt.getStartDate()) && appointment.getStartDate().before(appt.getEndDate())) ||
-                    (appointment.getEndDate().after(appt.getStartDate()) && appointment.getEndDate().before(appt.getEndDate()))) {
-                return new ResponseEntity<>(HttpStatus.CONFLICT); // Error: appointment already booked, returns status code
-            }
+        if (bookingQueue != null) {
+            return enqueue(appt, headers);
+        }
+        // One transaction: the doctor lookup or insert, the conflict check and the insert of the appointment
+        Appointment newAppt = bookingService.book(appt);
+        if(newAppt == null) {
+            singleConflicts.increment();
+            return new ResponseEntity<>(HttpStatus.CONFLICT); // Error: appointment already booked, returns status code
         }
-
-        appt.setDoctorObj(doctor);   // Sets the doctor name
-        Appointment newAppt = apptRepository.save(appt); // modify the code to save the appointment
-        doctor.addAppointment(newAppt); // Adds the appointment to the doctor
-        doctorRepository.save(doctor);  // Saves the doctor
         // Set the location header for the newly created resource
         headers.setLocation(
                 ServletUriComponentsBuilder
@@ -145,12 +474,139 @@ public class AppointmentController {
                         .buildAndExpand(newAppt.getId())
                         .toUri());
 
-        if (halContent != null && MediaTypes.HAL_JSON_VALUE.equals(halContent)) {
+        if (Representation.negotiate(halContent).isHal()) {
             return new ResponseEntity<>(assembler.toModel(newAppt), HttpStatus.CREATED);
         }
         return new ResponseEntity<>(appt, headers, HttpStatus.CREATED); // Returns the appointment, headers and status code
     }
 
+    /**
+     * Queue a new appointment
+     * @param appt the appointment, validated
+     * @param headers the response headers
+     * @return the pending ticket, or a 503 if the queue of the doctor is full
+     */
+    private ResponseEntity<?> enqueue(Appointment appt, HttpHeaders headers) {
+        if (appt.getDoctor() == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE); // Error: no doctor, returns status code
+        }
+        BookingTicket ticket = bookingQueue.enqueue(appt);
+        if (ticket == null) {
+            headers.set(HttpHeaders.RETRY_AFTER, "1");
+            return new ResponseEntity<>(headers, HttpStatus.SERVICE_UNAVAILABLE); // Error: queue full, returns status code
+        }
+        // Set the location header to the status of the booking
+        headers.setLocation(
+                ServletUriComponentsBuilder
+                        .fromCurrentContextPath()
+                        .path("/api/bookings/{ticket}")
+                        .buildAndExpand(ticket.getTicket())
+                        .toUri());
+        return new ResponseEntity<>(ticket, headers, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Create several appointments at once
+     * Each appointment is validated and checked for conflicts, against the stored appointments
+     * and against the previous appointments of the batch. The accepted ones are saved in a
+     * single transaction, with batched inserts.
+     * @param appts the appointments
+     * @return the result of each appointment, in the order of the request
+     */
+    @PostMapping("/appointments/batch")
+    ResponseEntity<?> newAppointments(@RequestBody List<Appointment> appts) {
+        if(appts.size() > MAX_BATCH_SIZE) {
+            return new ResponseEntity<>(HttpStatus.PAYLOAD_TOO_LARGE); // Error: too many appointments, returns status code
+        }
+        BatchItemResult[] results = new BatchItemResult[appts.size()];
+        Set<String> doctorNames = new HashSet<>();
+        // Validates each appointment, like @Valid does for a single one
+        for(int i = 0; i < appts.size(); i++) {
+            Appointment appt = appts.get(i);
+            if(appt == null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.NOT_ACCEPTABLE.value(), "Missing appointment");
+                batchValidationFailures.increment();
+                continue;
+            }
+            Set<ConstraintViolation<Appointment>> violations = validator.validate(appt);
+            if(!violations.isEmpty()) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.NOT_ACCEPTABLE.value(), violations.iterator().next().getMessage());
+                batchValidationFailures.increment();
+            } else if(appt.getDoctor() == null) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.NOT_ACCEPTABLE.value(), "Missing doctor");
+                batchValidationFailures.increment();
+            } else {
+                doctorNames.add(appt.getDoctor());
+            }
+        }
+
+        List<Integer> accepted = new ArrayList<>();
+        List<Lock> locks = doctorLocks.locksFor(doctorNames);
+        locks.forEach(Lock::lock);
+        try {
+            // One transaction for the new doctors and the appointments, the doctors are cached once it commits
+            transaction.executeWithoutResult(status -> saveBatch(appts, doctorNames, results, accepted));
+        } finally {
+            for(int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+        for(Integer i : accepted) {
+            results[i] = BatchItemResult.created(i, appts.get(i));
+        }
+        return new ResponseEntity<>(Arrays.asList(results), HttpStatus.OK); // Returns the result of each appointment and status code
+    }
+
+    /**
+     * Checks the valid appointments of a batch for conflicts and saves the accepted ones, with their new doctors
+     * Runs in the transaction and under the locks of the doctors of the batch.
+     * @param appts the appointments
+     * @param doctorNames the doctors of the valid appointments
+     * @param results the results of the appointments, set for the refused ones
+     * @param accepted the indexes of the accepted appointments, filled by this method
+     */
+    private void saveBatch(List<Appointment> appts, Set<String> doctorNames, BatchItemResult[] results, List<Integer> accepted) {
+        // Finds the doctors of the batch with one query, then creates the missing ones
+        Map<String, Doctor> doctors = new HashMap<>();
+        doctorRepository.findByNameIn(doctorNames).forEach(doctor -> doctors.put(doctor.getName(), doctor));
+        List<Doctor> newDoctors = doctorNames.stream()
+                .filter(name -> !doctors.containsKey(name))
+                .map(Doctor::new)
+                .collect(Collectors.toList());
+        doctorRepository.saveAll(newDoctors).forEach(doctor -> {
+            doctors.put(doctor.getName(), doctor);
+            doctorCache.put(doctor);
+        });
+
+        // The accepted appointments of the batch, by doctor, as start and end times
+        Map<String, NavigableMap<Long, Long>> batchSchedules = new HashMap<>();
+        List<Appointment> toSave = new ArrayList<>();
+        for(int i = 0; i < appts.size(); i++) {
+            if(results[i] != null) {
+                continue;
+            }
+            Appointment appt = appts.get(i);
+            Doctor doctor = doctors.get(appt.getDoctor());
+            long start = appt.getStartDate().getTime();
+            long end = appt.getEndDate().getTime();
+            NavigableMap<Long, Long> batchSchedule = batchSchedules.computeIfAbsent(appt.getDoctor(), name -> new TreeMap<>());
+            Map.Entry<Long, Long> previous = batchSchedule.floorEntry(start);
+            Map.Entry<Long, Long> next = batchSchedule.ceilingEntry(start);
+            if((previous != null && previous.getValue() > start) || (next != null && next.getKey() < end)
+                    || scheduleIndex.overlaps(doctor.getId(), appt.getStartDate(), appt.getEndDate())) {
+                results[i] = BatchItemResult.rejected(i, HttpStatus.CONFLICT.value(), "Appointment already booked");
+                batchConflicts.increment();
+                continue;
+            }
+            batchSchedule.put(start, end);
+            appt.setId(null);
+            appt.setDoctorObj(doctor);
+            toSave.add(appt);
+            accepted.add(i);
+        }
+        apptRepository.saveAll(toSave); // Inserts sent by JDBC batches, at the commit
+    }
+
     /**
      * Replace or modify an existing appointment
      * @param newAppt the new appointment
@@ -172,7 +628,7 @@ public class AppointmentController {
                     return apptRepository.save(newAppt);
                 });
 
-        if (halContent != null && MediaTypes.HAL_JSON_VALUE.equals(halContent)){
+        if (Representation.negotiate(halContent).isHal()){
             return new ResponseEntity<>(assembler.toModel(ap), HttpStatus.OK);
         }
         return new ResponseEntity<>(ap, HttpStatus.OK);
@@ -197,12 +653,53 @@ public class AppointmentController {
     }
 
     /**
-     * Delete all appointments
+     * Delete all appointments, or the ones of a range
+     * The appointments are deleted by one bulk statement, without being loaded, then the
+     * schedules of the doctors are read again from the database on next use.
+     * @param before only the appointments starting before this date
+     * @param doctor only the appointments of this doctor
      * @return the status code
      */
     @DeleteMapping("/appointments")
-    ResponseEntity<Appointment> deleteAllAppointments() {
-        apptRepository.deleteAll(); // Delete all appointments
+    ResponseEntity<Appointment> deleteAllAppointments(@RequestParam(name = "before", required = false) String before,
+                                                      @RequestParam(name = "doctor", required = false) String doctor) {
+        Date beforeDate = null;
+        // Check if the date parameter is set
+        if(before != null) {
+            try{
+                beforeDate = parseDate(before);
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid date format, returns status code
+            }
+        }
+        if(doctor == null) {
+            if(beforeDate != null) {
+                apptRepository.deleteByStartDateBefore(beforeDate);  // Delete the appointments before the date
+            } else {
+                apptRepository.deleteAllInBulk(); // Delete all appointments
+            }
+            // A booking checked against a schedule just evicted can only see more conflicts, never less
+            scheduleIndex.evictAll();
+            return new ResponseEntity<>(HttpStatus.OK); // Returns the status code
+        }
+
+        Long doctorId = doctorCache.findConfirmedIdByName(doctor);
+        if(doctorId == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error: doctor not found, returns status code
+        }
+        // The bookings of the doctor wait until its schedule is evicted
+        Lock lock = doctorLocks.lockFor(doctor);
+        lock.lock();
+        try {
+            if(beforeDate != null) {
+                apptRepository.deleteByDoctorIdAndStartDateBefore(doctorId, beforeDate);
+            } else {
+                apptRepository.deleteByDoctorId(doctorId);
+            }
+            scheduleIndex.evict(doctorId);
+        } finally {
+            lock.unlock();
+        }
         return new ResponseEntity<>(HttpStatus.OK); // Returns the status code
     }
 
@@ -215,10 +712,11 @@ public class AppointmentController {
     @DeleteMapping("/{id}/cancel")
     public ResponseEntity<?> cancel(@PathVariable Long id,
                                     @RequestHeader(value="Accept", required=false) String halContent) {
-        Appointment appt = (Appointment) one(id, null).getBody();
+        // Finds the appointment by its id and throws an exception if it doesn't exist
+        Appointment appt = apptRepository.findViewById(id).orElseThrow(() -> new AppointmentNotFoundException(id));
         Date now = new Date();
 
-        if(appt != null && now.after(appt.getStartDate())) {
+        if(now.after(appt.getStartDate())) {
             return new ResponseEntity<>(HttpStatus.CONFLICT); // Error: appointment already started, returns status code
         }
 
@@ -1,5 +1,7 @@
 package fr.univlr.info.AppointmentAPIV1.controller;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.http.HttpStatus;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -7,17 +9,58 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import java.util.List;
 
 @ControllerAdvice
 public class AppointmentIncoherentAdvice {
+
+    // The request bodies refused by the validation
+    private final Counter validationFailures;
+
+    /**
+     * Constructor
+     * @param meterRegistry the registry of the metrics
+     */
+    public AppointmentIncoherentAdvice(MeterRegistry meterRegistry) {
+        this.validationFailures = validationFailureCounter(meterRegistry, "request");
+    }
+
+    /**
+     * Registers the counter of the appointments refused by the validation
+     * @param meterRegistry the registry of the metrics
+     * @param source where the appointment comes from: request or batch
+     * @return the counter
+     */
+    static Counter validationFailureCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("appointment.validation.failures")
+                .description("Appointments refused by the validation")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
     @ResponseBody
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.NOT_ACCEPTABLE)
     String appointmentIncoherentHandler(MethodArgumentNotValidException ex) {
+        validationFailures.increment();
         //return ex.getBindingResult().getAllErrors().get(1).unwrap(ConstraintViolation.class).getMessageTemplate();
         List<ObjectError> errorList = ex.getBindingResult().getAllErrors();
         return errorList.get(errorList.size()-1).getDefaultMessage();
     }
+
+    /**
+     * Same as above, for the request bodies of the reactive profile
+     * @param ex the validation exception
+     * @return the message of the last error
+     */
+    @ResponseBody
+    @ExceptionHandler(WebExchangeBindException.class)
+    @ResponseStatus(HttpStatus.NOT_ACCEPTABLE)
+    String appointmentIncoherentHandler(WebExchangeBindException ex) {
+        validationFailures.increment();
+        List<ObjectError> errorList = ex.getAllErrors();
+        return errorList.get(errorList.size()-1).getDefaultMessage();
+    }
 }
@@ -0,0 +1,57 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import fr.univlr.info.AppointmentAPIV1.model.BookingTicket;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * The booking controller
+ * Serves the status of the bookings queued by POST /api/appointments, when the booking queue is enabled.
+ */
+@RestController
+@RequestMapping(path = "/api")
+@Profile("!reactive")
+@ConditionalOnProperty(name = "appointment.booking-queue.enabled", havingValue = "true")
+public class BookingController {
+
+    // The booking queue
+    private final BookingQueue bookingQueue;
+
+    /**
+     * Constructor
+     * @param bookingQueue the booking queue
+     */
+    public BookingController(BookingQueue bookingQueue) {
+        this.bookingQueue = bookingQueue;
+    }
+
+    /**
+     * Get the status of a booking
+     * Once the appointment is created, the Location header is the URI of the appointment.
+     * @param ticket the ticket returned by the booking
+     * @return the ticket, or a 404 if it doesn't exist or has expired
+     */
+    @GetMapping("/bookings/{ticket}")
+    public ResponseEntity<BookingTicket> getBooking(@PathVariable String ticket) {
+        BookingTicket status = bookingQueue.ticket(ticket);
+        if (status == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error: unknown or expired ticket, returns status code
+        }
+        if (status.getStatus() == BookingTicket.Status.CREATED) {
+            return ResponseEntity.ok()
+                    .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                            .path("/api/appointments/{id}")
+                            .buildAndExpand(status.getAppointment().getId())
+                            .toUri())
+                    .body(status);
+        }
+        return ResponseEntity.ok(status);
+    }
+}
@@ -0,0 +1,312 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.BookingTicket;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorCache;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorLocks;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorRepository;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorScheduleIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Queue of the bookings made by POST /api/appointments, enabled by appointment.booking-queue.enabled=true
+ * Each doctor has a bounded queue, drained in order by at most one worker at a time, so the bookings
+ * of a same doctor are serialized while the ones of different doctors are processed in parallel.
+ * A worker takes up to appointment.booking-queue.batch-size bookings, checks them for conflicts and
+ * inserts the accepted ones in one transaction, then hands the doctor back to the pool so that a
+ * busy doctor doesn't starve the others. A queue found empty once drained is removed, so only the
+ * doctors with waiting bookings hold one.
+ * The status of each booking is kept for appointment.booking-queue.ticket-expiry and served by
+ * {@link BookingController}.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "appointment.booking-queue.enabled", havingValue = "true")
+public class BookingQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(BookingQueue.class);
+
+    // The appointment repository
+    private final AppointmentRepository apptRepository;
+    // The doctor repository
+    private final DoctorRepository doctorRepository;
+    // The cache of the doctors, by name
+    private final DoctorCache doctorCache;
+    // The index of the doctors' schedules
+    private final DoctorScheduleIndex scheduleIndex;
+    // The locks of the doctors, shared with the batch creation
+    private final DoctorLocks doctorLocks;
+    // The transaction of each batch of bookings
+    private final TransactionTemplate transaction;
+    // The bookings refused because of an overlap
+    private final Counter conflicts;
+    // The maximum number of bookings waiting for a doctor
+    private final int capacity;
+    // The maximum number of bookings inserted in one transaction
+    private final int batchSize;
+    // The queues of the doctors with waiting bookings, by doctor name
+    private final ConcurrentMap<String, DoctorQueue> queues = new ConcurrentHashMap<>();
+    // The status of the bookings, by ticket
+    private final Cache<String, BookingTicket> tickets;
+    // The workers
+    private final ExecutorService workers;
+
+    /**
+     * Constructor
+     * @param apptRepository the appointment repository
+     * @param doctorRepository the doctor repository
+     * @param doctorCache the cache of the doctors, by name
+     * @param scheduleIndex the index of the doctors' schedules
+     * @param doctorLocks the locks of the doctors
+     * @param transactionManager the transaction manager
+     * @param meterRegistry the registry of the metrics
+     * @param capacity the maximum number of bookings waiting for a doctor
+     * @param batchSize the maximum number of bookings inserted in one transaction
+     * @param workers the number of worker threads
+     * @param maxTickets the maximum number of booking statuses kept
+     * @param ticketExpiry how long the status of a booking is kept
+     */
+    public BookingQueue(AppointmentRepository apptRepository, DoctorRepository doctorRepository, DoctorCache doctorCache,
+                        DoctorScheduleIndex scheduleIndex, DoctorLocks doctorLocks,
+                        PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                        @Value("${appointment.booking-queue.capacity:1000}") int capacity,
+                        @Value("${appointment.booking-queue.batch-size:50}") int batchSize,
+                        @Value("${appointment.booking-queue.workers:4}") int workers,
+                        @Value("${appointment.booking-queue.max-tickets:100000}") long maxTickets,
+                        @Value("${appointment.booking-queue.ticket-expiry:10m}") Duration ticketExpiry) {
+        this.apptRepository = apptRepository;
+        this.doctorRepository = doctorRepository;
+        this.doctorCache = doctorCache;
+        this.scheduleIndex = scheduleIndex;
+        this.doctorLocks = doctorLocks;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.conflicts = AppointmentController.conflictCounter(meterRegistry, "queued");
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.tickets = Caffeine.newBuilder()
+                .maximumSize(maxTickets)
+                .expireAfterWrite(ticketExpiry)
+                .build();
+        this.workers = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("booking-"));
+        Gauge.builder("appointment.booking.queue.size", this, BookingQueue::size)
+                .description("Bookings waiting in the booking queue")
+                .register(meterRegistry);
+        Gauge.builder("appointment.booking.queue.doctors", queues, Map::size)
+                .description("Doctors with bookings waiting in the booking queue")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a booking
+     * @param appt the appointment to create, validated
+     * @return the pending ticket, or null if the queue of the doctor is full
+     */
+    public BookingTicket enqueue(Appointment appt) {
+        BookingTicket ticket = BookingTicket.pending(UUID.randomUUID().toString());
+        tickets.put(ticket.getTicket(), ticket);
+        AtomicBoolean offered = new AtomicBoolean();
+        // Offered under the lock of the map entry, so a drained queue is never removed with a new booking
+        DoctorQueue queue = queues.compute(appt.getDoctor(), (name, current) -> {
+            DoctorQueue doctorQueue = current != null ? current : new DoctorQueue(name, capacity);
+            offered.set(doctorQueue.bookings.offer(new Booking(ticket, appt)));
+            return doctorQueue.bookings.isEmpty() ? null : doctorQueue;
+        });
+        if (!offered.get()) {
+            tickets.invalidate(ticket.getTicket());
+            return null;
+        }
+        schedule(queue);
+        return ticket;
+    }
+
+    /**
+     * Gets the status of a booking
+     * @param ticket the ticket id
+     * @return the ticket, or null if it doesn't exist or has expired
+     */
+    public BookingTicket ticket(String ticket) {
+        return tickets.getIfPresent(ticket);
+    }
+
+    /**
+     * Gets the number of bookings waiting
+     * @return the number of bookings in all the queues
+     */
+    public int size() {
+        return queues.values().stream().mapToInt(queue -> queue.bookings.size()).sum();
+    }
+
+    /**
+     * Hands a queue to a worker, unless one already has it
+     * @param queue the queue of a doctor
+     */
+    private void schedule(DoctorQueue queue) {
+        if (queue.scheduled.compareAndSet(false, true)) {
+            try {
+                workers.execute(() -> drain(queue));
+            } catch (RejectedExecutionException e) {
+                queue.scheduled.set(false);     // Shutting down
+            }
+        }
+    }
+
+    /**
+     * Processes one batch of bookings of a queue, then schedules the queue again if it isn't empty
+     * The bookings offered while the queue was scheduled are seen by the check after the release,
+     * otherwise the queue is removed if it is still empty.
+     * @param queue the queue of a doctor
+     */
+    private void drain(DoctorQueue queue) {
+        try {
+            List<Booking> batch = new ArrayList<>(batchSize);
+            Booking booking;
+            while (batch.size() < batchSize && (booking = queue.bookings.poll()) != null) {
+                batch.add(booking);
+            }
+            if (!batch.isEmpty()) {
+                process(queue.doctorName, batch);
+            }
+        } finally {
+            queue.scheduled.set(false);
+            if (!queue.bookings.isEmpty()) {
+                schedule(queue);
+            } else {
+                queues.computeIfPresent(queue.doctorName,
+                        (name, current) -> current == queue && current.bookings.isEmpty() ? null : current);
+            }
+        }
+    }
+
+    /**
+     * Creates the appointments of a batch of bookings of one doctor, in one transaction
+     * Each booking is checked against the stored appointments and the previous bookings of the batch.
+     * The lock of the doctor is only contended by the batch creation endpoint.
+     * @param doctorName the doctor name
+     * @param batch the bookings, in queue order
+     */
+    private void process(String doctorName, List<Booking> batch) {
+        List<Booking> accepted = new ArrayList<>();
+        Lock lock = doctorLocks.lockFor(doctorName);
+        lock.lock();
+        try {
+            transaction.executeWithoutResult(status -> {
+                Doctor doctor = doctorCache.findByName(doctorName);
+                if (doctor == null) {
+                    doctor = doctorRepository.save(new Doctor(doctorName));
+                    doctorCache.put(doctor);
+                }
+                // The accepted bookings of the batch, as start and end times
+                NavigableMap<Long, Long> batchSchedule = new TreeMap<>();
+                List<Appointment> toSave = new ArrayList<>();
+                for (Booking booking : batch) {
+                    Appointment appt = booking.appt;
+                    long start = appt.getStartDate().getTime();
+                    long end = appt.getEndDate().getTime();
+                    Map.Entry<Long, Long> previous = batchSchedule.floorEntry(start);
+                    Map.Entry<Long, Long> next = batchSchedule.ceilingEntry(start);
+                    if ((previous != null && previous.getValue() > start) || (next != null && next.getKey() < end)
+                            || scheduleIndex.overlaps(doctor.getId(), appt.getStartDate(), appt.getEndDate())) {
+                        tickets.put(booking.ticket.getTicket(),
+                                booking.ticket.rejected(HttpStatus.CONFLICT.value(), "Appointment already booked"));
+                        conflicts.increment();
+                        continue;
+                    }
+                    batchSchedule.put(start, end);
+                    appt.setId(null);
+                    appt.setDoctorObj(doctor);
+                    toSave.add(appt);
+                    accepted.add(booking);
+                }
+                apptRepository.saveAll(toSave);  // Inserts sent by JDBC batches
+            });
+        } catch (RuntimeException e) {
+            log.error("Bookings of doctor {} failed", doctorName, e);
+            for (Booking booking : batch) {
+                if (tickets.getIfPresent(booking.ticket.getTicket()) == booking.ticket) {
+                    tickets.put(booking.ticket.getTicket(),
+                            booking.ticket.rejected(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Booking failed"));
+                }
+            }
+            return;
+        } finally {
+            lock.unlock();
+        }
+        for (Booking booking : accepted) {
+            tickets.put(booking.ticket.getTicket(), booking.ticket.created(booking.appt));
+        }
+    }
+
+    /**
+     * Stops the workers, the bookings still queued are lost
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("{} queued bookings dropped at shutdown", size());
+        }
+    }
+
+    /**
+     * The bookings waiting for one doctor
+     */
+    private static final class DoctorQueue {
+        private final String doctorName;
+        private final Queue<Booking> bookings;
+        // Whether a worker has this queue, or is about to
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        DoctorQueue(String doctorName, int capacity) {
+            this.doctorName = doctorName;
+            this.bookings = new LinkedBlockingQueue<>(capacity);
+        }
+    }
+
+    /**
+     * A booking and its pending ticket
+     */
+    private static final class Booking {
+        private final BookingTicket ticket;
+        private final Appointment appt;
+
+        Booking(BookingTicket ticket, Appointment appt) {
+            this.ticket = ticket;
+            this.appt = appt;
+        }
+    }
+}
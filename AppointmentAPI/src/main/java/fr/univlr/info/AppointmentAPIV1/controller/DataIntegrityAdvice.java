@@ -0,0 +1,31 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Reports the writes rejected by a database constraint, like a doctor created twice
+ * by two instances of the service at the same time, or by a version check, like an
+ * appointment updated by two requests at the same time
+ */
+@ControllerAdvice
+public class DataIntegrityAdvice {
+    @ResponseBody
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String dataIntegrityHandler(DataIntegrityViolationException ex) {
+        return "Conflicting data, please retry";
+    }
+
+    @ResponseBody
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String optimisticLockingHandler(OptimisticLockingFailureException ex) {
+        return "Conflicting data, please retry";
+    }
+}
@@ -1,19 +1,39 @@
 package fr.univlr.info.AppointmentAPIV1.controller;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import fr.univlr.info.AppointmentAPIV1.model.Appointment;
 import fr.univlr.info.AppointmentAPIV1.model.AppointmentModelAssembler;
 import fr.univlr.info.AppointmentAPIV1.model.Doctor;
 import fr.univlr.info.AppointmentAPIV1.model.DoctorModelAssembler;
+import fr.univlr.info.AppointmentAPIV1.model.Representation;
+import fr.univlr.info.AppointmentAPIV1.model.TimeWindow;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.ArchivedAppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorCache;
 import fr.univlr.info.AppointmentAPIV1.store.DoctorRepository;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorScheduleIndex;
+import fr.univlr.info.AppointmentAPIV1.store.ScheduleVersion;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
-import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
@@ -23,14 +43,24 @@ import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
  * @author Nicole PEARSON
  *
  * The doctor controller
- * Contains all the CRUD operations
+ * Contains all the CRUD operations, on the servlet stack. The reactive profile
+ * replaces it by {@link ReactiveDoctorController}.
  */
 @RestController
 @RequestMapping(path = "/api")
+@Profile("!reactive")
 public class DoctorController {
 
     // The doctor repository
     private final DoctorRepository doctorRepository;
+    // The appointment repository
+    private final AppointmentRepository apptRepository;
+    // The archive of the appointments
+    private final ArchivedAppointmentRepository archiveRepository;
+    // The cache of the doctors, by name
+    private final DoctorCache doctorCache;
+    // The in-memory schedules of the doctors, sorted by start date
+    private final DoctorScheduleIndex scheduleIndex;
     // The doctor model assembler
     private final DoctorModelAssembler assembler;
     // The appointment model assembler
@@ -39,10 +69,20 @@ public class DoctorController {
     /**
      * Constructor
      * @param doctorRepository the doctor repository
+     * @param apptRepository the appointment repository
+     * @param archiveRepository the archive of the appointments
+     * @param doctorCache the cache of the doctors, by name
+     * @param scheduleIndex the in-memory schedules of the doctors
      */
-    public DoctorController(DoctorRepository doctorRepository) {
+    public DoctorController(DoctorRepository doctorRepository, AppointmentRepository apptRepository,
+                            ArchivedAppointmentRepository archiveRepository, DoctorCache doctorCache,
+                            DoctorScheduleIndex scheduleIndex) {
 
         this.doctorRepository = doctorRepository;
+        this.apptRepository = apptRepository;
+        this.archiveRepository = archiveRepository;
+        this.doctorCache = doctorCache;
+        this.scheduleIndex = scheduleIndex;
         // Creates the doctor model assembler
         this.assembler = new DoctorModelAssembler();
         // Creates the appointment model assembler
@@ -51,88 +91,279 @@ public class DoctorController {
 
     /**
      * Get all doctors
+     * When the limit or after parameter is set, returns one page of doctors sorted by id,
+     * starting after the given id (keyset pagination, no OFFSET scan).
+     * @param after only the doctors with an id greater than this one
+     * @param limit the maximum number of doctors to return
      * @return a list of doctors
      */
     @GetMapping("/doctors")
-    public ResponseEntity<?> all(@RequestHeader(value = "Accept", required = false) String halContent) {
-        List<Doctor> doctors = doctorRepository.findAll(); // Finds all doctors
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> all(@RequestParam(name = "after", required = false) Long after,
+                                 @RequestParam(name = "limit", required = false) Integer limit,
+                                 @RequestHeader(value = "Accept", required = false) String halContent) {
+        // Checks if a page is requested
+        if (after != null || limit != null) {
+            return page(after, limit, halContent);
+        }
+        List<Doctor> doctors = doctorRepository.findAllWithAppointments(); // Finds all doctors, with their appointments
         // Checks if the client accepts HAL
-        if (halContent != null && MediaTypes.HAL_JSON_VALUE.equals(halContent)) {
+        if (Representation.negotiate(halContent).isHal()) {
             // Converts the list of doctors to a list of EntityModel<Doctor>
             List<EntityModel<Doctor>> halDoctors = doctors.stream().map(assembler::toModel).collect(Collectors.toList());
             // Returns the list of doctors and status code
             return new ResponseEntity<>(CollectionModel.of(halDoctors,
-                    linkTo(methodOn(DoctorController.class).all(null)).withSelfRel()),
+                    linkTo(methodOn(DoctorController.class).all(null, null, null)).withSelfRel()),
                     HttpStatus.OK);
         }
         return new ResponseEntity<>(doctors, HttpStatus.OK);  // Returns the list of doctors and status code
     }
 
+    /**
+     * Get one page of doctors, sorted by id
+     * @param after the id of the last doctor of the previous page, or null for the first page
+     * @param limit the page size, or null for the default one
+     * @param halContent the Accept header
+     * @return a page of doctors, with a link to the next page if there is one
+     */
+    private ResponseEntity<?> page(Long after, Integer limit, String halContent) {
+        if (limit != null && limit <= 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);  // Error, invalid page size
+        }
+        int size = limit == null ? AppointmentController.DEFAULT_PAGE_SIZE : Math.min(limit, AppointmentController.MAX_PAGE_SIZE);
+        long afterId = after == null ? Long.MIN_VALUE : after;
+        Slice<Doctor> doctors = doctorRepository.findByIdGreaterThan(afterId, PageRequest.of(0, size, Sort.by("id")));
+        // Checks if the client accepts HAL
+        if (Representation.negotiate(halContent).isHal()) {
+            return new ResponseEntity<>(assembler.toSliceModel(doctors, after, size), HttpStatus.OK);
+        }
+        // Plain JSON: the next page is given by a Link header
+        HttpHeaders headers = new HttpHeaders();
+        assembler.nextLink(doctors, size).ifPresent(link -> headers.add(HttpHeaders.LINK, link.toString()));
+        return new ResponseEntity<>(doctors.getContent(), headers, HttpStatus.OK);
+    }
+
     /**
      * Get a doctor by its name
+     * The response has a strong ETag. A conditional request is first checked against the version
+     * of the doctor and of its appointments, and gets a 304 without loading them when it matches.
      * @param name the doctor name
      * @return the doctor
      */
     @GetMapping("/doctors/{name}")
-    public ResponseEntity<?> getDoctorByName(@PathVariable String name, @RequestHeader(value = "Accept", required = false) String halContent) {
-        Doctor doctor = doctorRepository.findByName(name);  // Finds the doctor by its name
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getDoctorByName(@PathVariable String name, @RequestHeader(value = "Accept", required = false) String halContent,
+                                             WebRequest request) {
+        Representation representation = Representation.negotiate(halContent);
+        boolean hal = representation.isHal();
+        // Checks if the client already has this version of the doctor
+        if (isConditional(request)) {
+            ScheduleVersion version = scheduleVersion(name);
+            if (version != null && request.checkNotModified(version.doctorETag(representation))) {
+                return null;    // Not modified, the body isn't written
+            }
+        }
+        Doctor doctor = doctorCache.findWithAppointmentsByName(name);  // Finds the doctor by its name, with its appointments
         //Checks if the doctor exists
         if(doctor == null){
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error, doctor not found
         }else {
+            String eTag = ScheduleVersion.of(doctor.getId(), doctor.getVersion(), doctor.getAppointments(), new Date()).doctorETag(representation);
             // Checks if the client accepts HAL
-            if (halContent != null && MediaTypes.HAL_JSON_VALUE.equals(halContent)) {
+            if (hal) {
                 // Returns the doctor and status code with the assembler
-                return new ResponseEntity<>(assembler.toModel(doctor), HttpStatus.OK);
+                return ResponseEntity.ok().eTag(eTag).body(assembler.toModel(doctor));
             }
-            return new ResponseEntity<>(doctor, HttpStatus.OK); // Returns the doctor and status code
+            return ResponseEntity.ok().eTag(eTag).body(doctor); // Returns the doctor and status code
         }
     }
 
+    /**
+     * Checks if a request is conditional
+     * @param request the request
+     * @return true if the request has an If-None-Match header
+     */
+    private static boolean isConditional(WebRequest request) {
+        return request != null && request.getHeader(HttpHeaders.IF_NONE_MATCH) != null;
+    }
+
+    /**
+     * Gets the version of a doctor and of its appointments, with one aggregate query
+     * @param name the doctor name
+     * @return the version, or null if the doctor doesn't exist
+     */
+    private ScheduleVersion scheduleVersion(String name) {
+        Long doctorId = doctorCache.findIdByName(name);
+        return doctorId == null ? null : doctorRepository.findScheduleVersionById(doctorId, new Date());
+    }
+
     /**
      * Delete a doctor by its name
+     * Neither the doctor nor its appointments are loaded: an exists query checks that it has no
+     * appointment, then one bulk statement deletes it. A booking inserted in between makes the
+     * delete fail on the foreign key, which is a conflict too.
      * @param name the doctor name
      * @return the doctor deleted
      */
     @DeleteMapping("/doctors/{name}")
     ResponseEntity<Doctor> deleteDoctorByName(@PathVariable String name) {
-        Doctor doctor = doctorRepository.findByName(name);  // Finds the doctor by its name
+        Long doctorId = doctorCache.findConfirmedIdByName(name);  // Finds the doctor id by its name
         //Checks if the doctor exists
-        if(doctor == null){
+        if(doctorId == null){
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error, doctor not found
-        }else {
-            if(doctor.getAppointments().size() > 0) {  // Checks if the doctor has appointments
-                return new ResponseEntity<>(HttpStatus.CONFLICT);  // Error, doctor has appointments (cannot be deleted)
-            }
-            doctorRepository.delete(doctor);    // Deletes the doctor
-            return new ResponseEntity<>(doctor, HttpStatus.OK); // Returns the doctor deleted and status code
         }
+        if(apptRepository.existsByDoctorObjId(doctorId)) {  // Checks if the doctor has appointments
+            return new ResponseEntity<>(HttpStatus.CONFLICT);  // Error, doctor has appointments (cannot be deleted)
+        }
+        if(archiveRepository.existsByDoctorId(doctorId)) {  // Checks if the doctor has archived appointments
+            return new ResponseEntity<>(HttpStatus.CONFLICT);  // Error, the archive still refers to the doctor
+        }
+        int deleted = doctorRepository.deleteByIdInBulk(doctorId);    // Deletes the doctor
+        doctorCache.invalidate(name);
+        scheduleIndex.evict(doctorId);
+        if(deleted == 0) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error, doctor deleted meanwhile
+        }
+        Doctor doctor = new Doctor(name);   // The doctor deleted, without any appointment
+        doctor.setId(doctorId);
+        return new ResponseEntity<>(doctor, HttpStatus.OK); // Returns the doctor deleted and status code
     }
 
     /**
      * Get all appointments of a doctor
+     * The response has a strong ETag. A conditional request is first checked against the version
+     * of the appointments, and gets a 304 without loading them when it matches.
      * @param name the doctor name
      * @return  a list of appointments
      */
     @GetMapping("/doctors/{name}/appointments")
-    public ResponseEntity<?> getDoctorAppointments(@PathVariable String name, @RequestHeader(value = "Accept", required = false) String halContent) {
-        Doctor doctor = doctorRepository.findByName(name);  // Finds the doctor by its name
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getDoctorAppointments(@PathVariable String name, @RequestHeader(value = "Accept", required = false) String halContent,
+                                                   WebRequest request) {
+        Representation representation = Representation.negotiate(halContent);
+        boolean hal = representation.isHal();
+        // Checks if the client already has this version of the appointments
+        if (isConditional(request)) {
+            ScheduleVersion version = scheduleVersion(name);
+            if (version != null && request.checkNotModified(version.appointmentsETag(representation))) {
+                return null;    // Not modified, the body isn't written
+            }
+        }
+        Long doctorId = doctorCache.findIdByName(name);  // Finds the doctor id by its name
         //Checks if the doctor exists
-        if(doctor == null){
+        if(doctorId == null){
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error, doctor not found
-        }else {
-            // Checks if the client accepts HAL
-            if (halContent != null && MediaTypes.HAL_JSON_VALUE.equals(halContent)){
-                // Converts the list of appointments to a list of EntityModel<Appointment>
-                List<EntityModel<Appointment>> halAppts = doctor.getAppointments().stream()
-                        .map(apptAssembler::toModel).collect(Collectors.toList());
-                // Returns the list of appointments and status code
-                return new ResponseEntity<>(CollectionModel.of(halAppts,
-                        linkTo(methodOn(DoctorController.class).getDoctorAppointments(doctor.getName() ,null)).withSelfRel()),
-                        HttpStatus.OK);
+        }
+        List<Appointment> appts = apptRepository.findViewsByDoctorId(doctorId);  // Finds the doctor appointments, as read-only copies
+        // An id from the cache may be stale, checks the doctor still exists when it has no appointment
+        if(appts.isEmpty() && !doctorRepository.existsById(doctorId)){
+            doctorId = doctorCache.refreshIdByName(name);   // The doctor may have been created again
+            if(doctorId == null){
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error, doctor not found
             }
-            return new ResponseEntity<>(doctor.getAppointments(), HttpStatus.OK); // Returns the doctor appointments and status code
+            appts = apptRepository.findViewsByDoctorId(doctorId);
+        }
+        // The ETag of the appointments doesn't depend on the doctor version
+        String eTag = ScheduleVersion.of(doctorId, 0, appts, new Date()).appointmentsETag(representation);
+        // Checks if the client accepts HAL
+        if (hal){
+            // Converts the list of appointments to a list of EntityModel<Appointment>
+            List<EntityModel<Appointment>> halAppts = appts.stream()
+                    .map(apptAssembler::toModel).collect(Collectors.toList());
+            // Returns the list of appointments and status code
+            return ResponseEntity.ok().eTag(eTag).body(CollectionModel.of(halAppts,
+                    linkTo(methodOn(DoctorController.class).getDoctorAppointments(name, null, null)).withSelfRel()));
         }
+        return ResponseEntity.ok().eTag(eTag).body(appts); // Returns the doctor appointments and status code
+    }
+
+    /**
+     * Get all appointments of a doctor, the archived ones included, sorted by id
+     * @param name the doctor name
+     * @param halContent the Accept header
+     * @return a list of appointments
+     */
+    @GetMapping(path = "/doctors/{name}/appointments", params = "includeArchived=true")
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getDoctorAppointmentsIncludingArchived(@PathVariable String name,
+                                                                    @RequestHeader(value = "Accept", required = false) String halContent) {
+        Long doctorId = doctorCache.findConfirmedIdByName(name);  // Finds the doctor id by its name
+        //Checks if the doctor exists
+        if(doctorId == null){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error, doctor not found
+        }
+        List<Appointment> appts = new ArrayList<>(apptRepository.findViewsByDoctorId(doctorId));
+        appts.addAll(archiveRepository.findViewsByDoctorId(doctorId));
+        appts.sort(Comparator.comparing(Appointment::getId));
+        // Checks if the client accepts HAL
+        if (Representation.negotiate(halContent).isHal()){
+            List<EntityModel<Appointment>> halAppts = appts.stream()
+                    .map(apptAssembler::toModel).collect(Collectors.toList());
+            return new ResponseEntity<>(CollectionModel.of(halAppts, AppointmentModelAssembler.includingArchived(
+                    linkTo(methodOn(DoctorController.class).getDoctorAppointments(name, null, null)).withSelfRel())),
+                    HttpStatus.OK);
+        }
+        return new ResponseEntity<>(appts, HttpStatus.OK); // Returns the doctor appointments and status code
+    }
+
+    /**
+     * Get the free time windows of a doctor
+     * Computed in one pass over the doctor's appointments running in the period, read from the
+     * schedule index sorted by start date, so the appointments aren't loaded from the database.
+     * The period starts now at the earliest, appointments cannot be booked in the past.
+     * @param name the doctor name
+     * @param from the start of the period, in ISO local date time format, now by default
+     * @param to the end of the period, in ISO local date time format
+     * @param duration the minimum duration of a free window, in ISO-8601 format (PT30M)
+     * @return a list of free time windows, sorted by start date
+     */
+    @GetMapping("/doctors/{name}/availability")
+    public ResponseEntity<List<TimeWindow>> getDoctorAvailability(@PathVariable String name,
+                                                                  @RequestParam(name = "from", required = false) String from,
+                                                                  @RequestParam(name = "to") String to,
+                                                                  @RequestParam(name = "duration") String duration) {
+        Date now = new Date();
+        Date fromDate;
+        Date toDate;
+        Duration minDuration;
+        try {
+            fromDate = from == null ? now : AppointmentController.parseDate(from);
+            toDate = AppointmentController.parseDate(to);
+            minDuration = Duration.parse(duration);
+        } catch (Exception e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid date or duration format
+        }
+        if (fromDate.before(now)) {
+            fromDate = now;
+        }
+        // Checks the period and the duration
+        if (!fromDate.before(toDate) || minDuration.isNegative() || minDuration.isZero()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        // The windows are read from the index, which can't tell a stale id
+        Long doctorId = doctorCache.findConfirmedIdByName(name);  // Finds the doctor id by its name
+        //Checks if the doctor exists
+        if(doctorId == null){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);  // Error, doctor not found
+        }
+        // Returns the free windows and status code
+        return new ResponseEntity<>(scheduleIndex.freeWindows(doctorId, fromDate, toDate, minDuration.toMillis()), HttpStatus.OK);
+    }
+
+    /**
+     * Get the statistics of the doctor cache
+     * @return the size, hit, miss and eviction counts of the cache
+     */
+    @GetMapping("/cache/doctors")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        CacheStats stats = doctorCache.stats();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("size", doctorCache.size());
+        body.put("hitCount", stats.hitCount());
+        body.put("missCount", stats.missCount());
+        body.put("hitRate", stats.hitRate());
+        body.put("evictionCount", stats.evictionCount());
+        return new ResponseEntity<>(body, HttpStatus.OK);
     }
 
 }
@@ -0,0 +1,221 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded store of the responses of the requests carrying an Idempotency-Key header
+ * The first request with a key runs, its response is kept for appointment.idempotency.expire-after-write
+ * and replayed to the retries, with the Idempotent-Replayed header. The keys are scoped by client: the principal,
+ * else the Authorization header, else the remote address, so a client never gets the response of another one.
+ * A request arriving while the first one runs waits for its response for at most appointment.idempotency.wait,
+ * then gets a 409 with a Retry-After header, so that a retry storm can't hold every servlet thread.
+ * The key is bound to the request: the same key with another request is a 422.
+ * Nothing is kept when the request fails or when its response is a 5xx, so that a retry runs again.
+ */
+@Component
+@Profile("!reactive")
+public class IdempotencyStore {
+
+    /**
+     * The header of the requests
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    /**
+     * The header of the replayed responses
+     */
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    // The maximum length of a key
+    static final int MAX_KEY_LENGTH = 255;
+
+    // The responses, by client and key
+    private final Cache<List<String>, Entry> entries;
+    // How long a retry waits for the response of the first request, in nanoseconds
+    private final long wait;
+    // The replayed responses
+    private final Counter replays;
+
+    /**
+     * Constructor
+     * @param maximumSize the maximum number of keys kept in the store
+     * @param expireAfterWrite how long a response is kept in the store
+     * @param wait how long a retry waits for the response of the first request
+     * @param meterRegistry the registry of the metrics
+     */
+    public IdempotencyStore(@Value("${appointment.idempotency.maximum-size:10000}") long maximumSize,
+                            @Value("${appointment.idempotency.expire-after-write:24h}") Duration expireAfterWrite,
+                            @Value("${appointment.idempotency.wait:5s}") Duration wait,
+                            MeterRegistry meterRegistry) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+        this.wait = wait.toNanos();
+        this.replays = Counter.builder("appointment.idempotency.replays")
+                .description("Responses replayed to a request with an already used Idempotency-Key")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs a request once per client and key
+     * @param key the Idempotency-Key header, or null to always run the request
+     * @param client the HTTP request, identifying the client
+     * @param request what identifies the request, compared with equals to the one of the first request of the key
+     * @param handler the handler of the request
+     * @return the response of the handler, or the replayed response of the first request of the key
+     */
+    public ResponseEntity<?> execute(String key, HttpServletRequest client, Object request, Supplier<ResponseEntity<?>> handler) {
+        if (key == null) {
+            return handler.get();
+        }
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid key, returns status code
+        }
+        return execute(Arrays.asList(client(client), key), request, handler);
+    }
+
+    /**
+     * Runs a request once per scoped key
+     * @param key the client and the Idempotency-Key header
+     * @param request what identifies the request
+     * @param handler the handler of the request
+     * @return the response of the handler, or the replayed response of the first request of the key
+     */
+    private ResponseEntity<?> execute(List<String> key, Object request, Supplier<ResponseEntity<?>> handler) {
+        while (true) {
+            Entry entry = new Entry(request);
+            Entry first = entries.asMap().putIfAbsent(key, entry);
+            if (first == null) {
+                return run(key, entry, handler);
+            }
+            if (!first.request.equals(request)) {
+                return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY); // Error: key reused by another request, returns status code
+            }
+            ResponseEntity<?> response;
+            try {
+                response = first.response.get(wait, TimeUnit.NANOSECONDS);   // Waits for the first request of the key
+            } catch (ExecutionException | CancellationException e) {
+                continue;   // The first request failed and released the key, runs this one
+            } catch (TimeoutException e) {
+                return inProgress();    // The first request is still running
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return inProgress();
+            }
+            if (response.getStatusCode().is5xxServerError()) {
+                continue;
+            }
+            replays.increment();
+            return replay(response);
+        }
+    }
+
+    /**
+     * Runs the first request of a key and keeps its response
+     * @param key the key
+     * @param entry the entry of the key
+     * @param handler the handler of the request
+     * @return the response
+     */
+    private ResponseEntity<?> run(List<String> key, Entry entry, Supplier<ResponseEntity<?>> handler) {
+        ResponseEntity<?> response;
+        try {
+            response = handler.get();
+        } catch (RuntimeException | Error e) {
+            entries.asMap().remove(key, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        if (response.getStatusCode().is5xxServerError()) {
+            entries.asMap().remove(key, entry);
+        }
+        entry.response.complete(response);
+        return response;
+    }
+
+    /**
+     * Identifies the client of a request
+     * The Authorization header is only kept as a digest.
+     * @param request the HTTP request
+     * @return the principal, the digest of the Authorization header or the remote address
+     */
+    static String client(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return "principal:" + principal.getName();
+        }
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (StringUtils.hasText(authorization)) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(authorization.getBytes(StandardCharsets.UTF_8));
+                return "authorization:" + Base64.getEncoder().encodeToString(digest);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);   // Every JVM has SHA-256
+            }
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
+    /**
+     * Answers a retry while the first request of its key is still running
+     * @return a 409 with a Retry-After header
+     */
+    private static ResponseEntity<?> inProgress() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1").build();
+    }
+
+    /**
+     * Copies a response, marked as replayed
+     * @param response the response of the first request
+     * @return the replayed response
+     */
+    private static ResponseEntity<?> replay(ResponseEntity<?> response) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(response.getHeaders());
+        headers.set(IDEMPOTENT_REPLAYED, "true");
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    /**
+     * The first request of a key and its response, once completed
+     */
+    private static class Entry {
+        // What identifies the request
+        private final Object request;
+        // The response
+        private final CompletableFuture<ResponseEntity<?>> response = new CompletableFuture<>();
+
+        /**
+         * Constructor
+         * @param request what identifies the request
+         */
+        Entry(Object request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.AppointmentRow;
+import fr.univlr.info.AppointmentAPIV1.model.DoctorRow;
+import fr.univlr.info.AppointmentAPIV1.model.ReactiveAppointmentModelAssembler;
+import fr.univlr.info.AppointmentAPIV1.model.Representation;
+import fr.univlr.info.AppointmentAPIV1.store.ReactiveAppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.ReactiveDoctorRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.util.Date;
+import java.util.List;
+
+import static fr.univlr.info.AppointmentAPIV1.model.AppointmentRow.toLocal;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.methodOn;
+
+/**
+ * The appointment controller of the reactive profile
+ * Same operations and representations as {@link AppointmentController}, with non-blocking
+ * handlers on R2DBC repositories. The batch creation isn't available on this profile.
+ */
+@RestController
+@RequestMapping(path = "/api")
+@Profile("reactive")
+public class ReactiveAppointmentController {
+
+    // The appointment repository
+    private final ReactiveAppointmentRepository apptRepository;
+    // The doctor repository
+    private final ReactiveDoctorRepository doctorRepository;
+    // The transactions of the bookings
+    private final TransactionalOperator transactions;
+    // The appointment model assembler
+    private final ReactiveAppointmentModelAssembler assembler;
+    // The bookings refused because of an overlap
+    private final Counter conflicts;
+
+    /**
+     * Constructor
+     * @param apptRepository the appointment repository
+     * @param doctorRepository the doctor repository
+     * @param transactions the transactions of the bookings
+     * @param meterRegistry the registry of the metrics
+     */
+    public ReactiveAppointmentController(ReactiveAppointmentRepository apptRepository, ReactiveDoctorRepository doctorRepository,
+                                         TransactionalOperator transactions, MeterRegistry meterRegistry) {
+        this.apptRepository = apptRepository;
+        this.doctorRepository = doctorRepository;
+        this.transactions = transactions;
+        this.assembler = new ReactiveAppointmentModelAssembler();
+        this.conflicts = AppointmentController.conflictCounter(meterRegistry, "single");
+    }
+
+    /**
+     * Get all appointments
+     * When the limit or after parameter is set, returns one page of appointments sorted by id,
+     * starting after the given id.
+     * @param date only the appointments starting after this date
+     * @param after only the appointments with an id greater than this one
+     * @param limit the maximum number of appointments to return
+     * @return a list of appointments
+     */
+    @GetMapping("/appointments")
+    public Mono<ResponseEntity<Object>> all(@RequestParam(name = "date", required = false) String date,
+                                            @RequestParam(name = "after", required = false) Long after,
+                                            @RequestParam(name = "limit", required = false) Integer limit,
+                                            @RequestHeader(value = "Accept", required = false) String halContent,
+                                            ServerWebExchange exchange) {
+        Date afterDate = null;
+        // Check if the date parameter is set
+        if (date != null) {
+            try {
+                afterDate = AppointmentController.parseDate(date);
+            } catch (Exception e) {
+                return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST)); // Error: invalid date format
+            }
+        }
+        Representation representation = Representation.negotiate(halContent);
+        boolean hal = representation.isHal();
+        // Check if a page is requested
+        if (after != null || limit != null) {
+            return page(date, afterDate, after, limit, hal, exchange);
+        }
+
+        Flux<AppointmentRow> rows = afterDate != null ? apptRepository.findByAfterDate(toLocal(afterDate)) : apptRepository.findAllSorted();
+        Mono<List<Appointment>> appts = rows.map(AppointmentRow::toAppointment).collectList();
+        if (hal) {
+            return appts.flatMap(list -> Mono.zip(assembler.toModels(list, exchange),
+                    linkTo(methodOn(ReactiveAppointmentController.class).all(null, null, null, null, null), exchange).withSelfRel().toMono()))
+                    .map(t -> new ResponseEntity<Object>(CollectionModel.of(t.getT1(), t.getT2()), HttpStatus.OK));
+        }
+        return appts.map(list -> new ResponseEntity<Object>(list, HttpStatus.OK));
+    }
+
+    /**
+     * Export all appointments as newline delimited JSON
+     * The appointments are written as they are read from the database.
+     * @param date only the appointments starting after this date
+     * @return the appointments, one JSON object per line
+     */
+    @GetMapping(path = "/appointments", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<Appointment>> export(@RequestParam(name = "date", required = false) String date) {
+        Flux<AppointmentRow> rows = apptRepository.findAllSorted();
+        // Check if the date parameter is set
+        if (date != null) {
+            try {
+                rows = apptRepository.findByAfterDate(toLocal(AppointmentController.parseDate(date)));
+            } catch (Exception e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // Error: invalid date format
+            }
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(rows.map(AppointmentRow::toAppointment));
+    }
+
+    /**
+     * Get one page of appointments, sorted by id
+     * One more appointment than the page size is read, to know if there is a next page.
+     * @param date the date parameter
+     * @param afterDate the parsed date parameter, or null
+     * @param after the id of the last appointment of the previous page, or null for the first page
+     * @param limit the page size, or null for the default one
+     * @param hal true for the HAL representation
+     * @param exchange the current exchange
+     * @return a page of appointments, with a link to the next page if there is one
+     */
+    private Mono<ResponseEntity<Object>> page(String date, Date afterDate, Long after, Integer limit, boolean hal,
+                                              ServerWebExchange exchange) {
+        if (limit != null && limit <= 0) {
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST)); // Error: invalid page size
+        }
+        int size = limit == null ? AppointmentController.DEFAULT_PAGE_SIZE : Math.min(limit, AppointmentController.MAX_PAGE_SIZE);
+        long afterId = after == null ? Long.MIN_VALUE : after;
+        Flux<AppointmentRow> rows = afterDate != null
+                ? apptRepository.findByStartDateAfterAndIdGreaterThan(toLocal(afterDate), afterId, size + 1)
+                : apptRepository.findByIdGreaterThan(afterId, size + 1);
+        return rows.map(AppointmentRow::toAppointment).collectList().flatMap(appts -> {
+            boolean hasNext = appts.size() > size;
+            List<Appointment> content = hasNext ? appts.subList(0, size) : appts;
+            if (hal) {
+                return assembler.toSliceModel(content, hasNext, date, after, size, exchange)
+                        .map(model -> new ResponseEntity<Object>(model, HttpStatus.OK));
+            }
+            // Plain JSON: the next page is given by a Link header
+            return assembler.nextLink(content, hasNext, date, size, exchange).map(next -> {
+                HttpHeaders headers = new HttpHeaders();
+                next.ifPresent(link -> headers.add(HttpHeaders.LINK, link.toString()));
+                return new ResponseEntity<Object>(content, headers, HttpStatus.OK);
+            });
+        });
+    }
+
+    /**
+     * Get an appointment by its id
+     * The response has the same strong ETag as on the servlet stack.
+     * @param id the appointment id
+     * @return the appointment
+     */
+    @GetMapping("/appointments/{id}")
+    public Mono<ResponseEntity<Object>> one(@PathVariable Long id, @RequestHeader(value = "Accept", required = false) String halContent,
+                                            ServerWebExchange exchange) {
+        Representation representation = Representation.negotiate(halContent);
+        boolean hal = representation.isHal();
+        return apptRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new AppointmentNotFoundException(id)))
+                .map(AppointmentRow::toAppointment)
+                .flatMap(appt -> {
+                    String eTag = AppointmentController.eTag(appt, representation);
+                    if (hal) {
+                        return assembler.toModel(appt, exchange).map(model -> ResponseEntity.ok().eTag(eTag).<Object>body(model));
+                    }
+                    return Mono.just(ResponseEntity.ok().eTag(eTag).<Object>body(appt));
+                });
+    }
+
+    /**
+     * Create a new appointment
+     * The doctor row is locked from the overlap check to the insert, so bookings of a same doctor
+     * are serialized without blocking a thread of the server.
+     * @param appt the appointment
+     * @return the appointment just created
+     */
+    @PostMapping("/appointments")
+    Mono<ResponseEntity<Object>> newAppointment(@Valid @RequestBody Appointment appt,
+                                                @RequestHeader(value = "Accept", required = false) String halContent,
+                                                ServerWebExchange exchange) {
+        // Empty when the appointment overlaps an appointment of the doctor
+        Mono<AppointmentRow> booking = doctorRepository.lockByName(appt.getDoctor())
+                .switchIfEmpty(Mono.defer(() -> doctorRepository.save(new DoctorRow(appt.getDoctor()))))
+                .flatMap(doctor -> apptRepository.overlaps(doctor.getId(), toLocal(appt.getStartDate()), toLocal(appt.getEndDate()))
+                        .flatMap(overlaps -> overlaps ? Mono.<AppointmentRow>empty()
+                                : apptRepository.save(new AppointmentRow(null, appt, doctor.getId()))))
+                .as(transactions::transactional);
+        return booking
+                .flatMap(saved -> created(saved.toAppointment(), halContent, exchange))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    conflicts.increment();
+                    return new ResponseEntity<>(HttpStatus.CONFLICT); // Error: appointment already booked
+                }));
+    }
+
+    /**
+     * Builds the response of a created appointment
+     * @param appt the appointment
+     * @param halContent the Accept header
+     * @param exchange the current exchange
+     * @return the response, with the location of the appointment
+     */
+    private Mono<ResponseEntity<Object>> created(Appointment appt, String halContent, ServerWebExchange exchange) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(UriComponentsBuilder.fromHttpRequest(exchange.getRequest())
+                .path("/{id}")
+                .buildAndExpand(appt.getId())
+                .toUri());
+        if (Representation.negotiate(halContent).isHal()) {
+            return assembler.toModel(appt, exchange).map(model -> new ResponseEntity<Object>(model, headers, HttpStatus.CREATED));
+        }
+        return Mono.just(new ResponseEntity<>(appt, headers, HttpStatus.CREATED));
+    }
+
+    /**
+     * Replace or modify an existing appointment
+     * @param newAppt the new appointment
+     * @param id the id of the existing appointment
+     * @return the modified appointment
+     */
+    @PutMapping("/appointments/{id}")
+    Mono<ResponseEntity<Object>> replaceAppointment(@Valid @RequestBody Appointment newAppt, @PathVariable Long id,
+                                                    @RequestHeader(value = "Accept", required = false) String halContent,
+                                                    ServerWebExchange exchange) {
+        return apptRepository.findById(id)
+                .map(row -> {
+                    row.setFrom(newAppt);
+                    return row;
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> new AppointmentRow(null, newAppt, null)))
+                .flatMap(apptRepository::save)
+                .map(AppointmentRow::toAppointment)
+                .flatMap(appt -> {
+                    if (Representation.negotiate(halContent).isHal()) {
+                        return assembler.toModel(appt, exchange).map(model -> new ResponseEntity<Object>(model, HttpStatus.OK));
+                    }
+                    return Mono.just(new ResponseEntity<>(appt, HttpStatus.OK));
+                });
+    }
+
+    /**
+     * Delete an appointment
+     * @param id the id of the appointment to delete
+     * @return the deleted appointment
+     */
+    @DeleteMapping("/appointments/{id}")
+    Mono<ResponseEntity<Appointment>> deleteAppointment(@PathVariable Long id) {
+        return apptRepository.findById(id)
+                .flatMap(row -> apptRepository.delete(row).thenReturn(new ResponseEntity<>(row.toAppointment(), HttpStatus.OK)))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND)); // Error: appointment not found
+    }
+
+    /**
+     * Delete all appointments, or only the ones before a date and/or of a doctor
+     * Each case is a single DELETE statement.
+     * @param before only the appointments starting before this date
+     * @param doctor only the appointments of this doctor
+     * @return the status code
+     */
+    @DeleteMapping("/appointments")
+    Mono<ResponseEntity<Appointment>> deleteAllAppointments(@RequestParam(name = "before", required = false) String before,
+                                                            @RequestParam(name = "doctor", required = false) String doctor) {
+        Date beforeDate = null;
+        // Check if the date parameter is set
+        if (before != null) {
+            try {
+                beforeDate = AppointmentController.parseDate(before);
+            } catch (Exception e) {
+                return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST)); // Error: invalid date format
+            }
+        }
+        if (doctor == null) {
+            Mono<?> deletion = beforeDate != null
+                    ? apptRepository.deleteByStartDateBefore(toLocal(beforeDate))
+                    : apptRepository.deleteAll();
+            return deletion.thenReturn(new ResponseEntity<>(HttpStatus.OK));
+        }
+        final Date from = beforeDate;
+        return doctorRepository.findByName(doctor)
+                .flatMap(row -> (from != null
+                        ? apptRepository.deleteByDoctorIdAndStartDateBefore(row.getId(), toLocal(from))
+                        : apptRepository.deleteByDoctorId(row.getId()))
+                        .thenReturn(new ResponseEntity<Appointment>(HttpStatus.OK)))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND)); // Error: doctor not found
+    }
+
+    /**
+     * Cancel an appointment if it hasn't started yet
+     * @param id the id of the appointment to cancel
+     * @param halContent the Accept header
+     * @return the deleted appointment
+     */
+    @DeleteMapping("/{id}/cancel")
+    public Mono<ResponseEntity<Object>> cancel(@PathVariable Long id,
+                                               @RequestHeader(value = "Accept", required = false) String halContent,
+                                               ServerWebExchange exchange) {
+        return apptRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new AppointmentNotFoundException(id)))
+                .flatMap(row -> {
+                    Appointment appt = row.toAppointment();
+                    if (new Date().after(appt.getStartDate())) {
+                        return Mono.just(new ResponseEntity<>(HttpStatus.CONFLICT)); // Error: appointment already started
+                    }
+                    return apptRepository.delete(row).thenReturn(new ResponseEntity<>(appt, HttpStatus.OK));
+                });
+    }
+}
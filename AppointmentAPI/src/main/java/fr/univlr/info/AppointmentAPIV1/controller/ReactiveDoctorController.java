@@ -0,0 +1,214 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.AppointmentRow;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.model.DoctorRow;
+import fr.univlr.info.AppointmentAPIV1.model.ReactiveAppointmentModelAssembler;
+import fr.univlr.info.AppointmentAPIV1.model.ReactiveDoctorModelAssembler;
+import fr.univlr.info.AppointmentAPIV1.model.Representation;
+import fr.univlr.info.AppointmentAPIV1.store.ReactiveAppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.ReactiveDoctorRepository;
+import fr.univlr.info.AppointmentAPIV1.store.ScheduleVersion;
+import org.springframework.context.annotation.Profile;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.methodOn;
+
+/**
+ * The doctor controller of the reactive profile
+ * Same operations and representations as {@link DoctorController}, with non-blocking handlers
+ * on R2DBC repositories. The availability and the cache statistics, which rely on the
+ * in-memory indexes of the servlet stack, aren't available on this profile.
+ */
+@RestController
+@RequestMapping(path = "/api")
+@Profile("reactive")
+public class ReactiveDoctorController {
+
+    // The doctor repository
+    private final ReactiveDoctorRepository doctorRepository;
+    // The appointment repository
+    private final ReactiveAppointmentRepository apptRepository;
+    // The doctor model assembler
+    private final ReactiveDoctorModelAssembler assembler;
+    // The appointment model assembler
+    private final ReactiveAppointmentModelAssembler apptAssembler;
+
+    /**
+     * Constructor
+     * @param doctorRepository the doctor repository
+     * @param apptRepository the appointment repository
+     */
+    public ReactiveDoctorController(ReactiveDoctorRepository doctorRepository, ReactiveAppointmentRepository apptRepository) {
+        this.doctorRepository = doctorRepository;
+        this.apptRepository = apptRepository;
+        this.assembler = new ReactiveDoctorModelAssembler();
+        this.apptAssembler = new ReactiveAppointmentModelAssembler();
+    }
+
+    /**
+     * Get all doctors, with their appointments
+     * When the limit or after parameter is set, returns one page of doctors sorted by id,
+     * starting after the given id.
+     * @param after only the doctors with an id greater than this one
+     * @param limit the maximum number of doctors to return
+     * @return a list of doctors
+     */
+    @GetMapping("/doctors")
+    public Mono<ResponseEntity<Object>> all(@RequestParam(name = "after", required = false) Long after,
+                                            @RequestParam(name = "limit", required = false) Integer limit,
+                                            @RequestHeader(value = "Accept", required = false) String halContent,
+                                            ServerWebExchange exchange) {
+        Representation representation = Representation.negotiate(halContent);
+        boolean hal = representation.isHal();
+        // Checks if a page is requested
+        if (after != null || limit != null) {
+            return page(after, limit, hal, exchange);
+        }
+        // Two queries, the appointments are dispatched to their doctors in memory
+        Mono<List<Doctor>> doctors = Mono.zip(doctorRepository.findAllSorted().collectList(), apptRepository.findAllSorted().collectList())
+                .map(t -> toDoctors(t.getT1(), t.getT2()));
+        if (hal) {
+            return doctors.flatMap(list -> Mono.zip(assembler.toModels(list, exchange),
+                    linkTo(methodOn(ReactiveDoctorController.class).all(null, null, null, null), exchange).withSelfRel().toMono()))
+                    .map(t -> new ResponseEntity<Object>(CollectionModel.of(t.getT1(), t.getT2()), HttpStatus.OK));
+        }
+        return doctors.map(list -> new ResponseEntity<Object>(list, HttpStatus.OK));
+    }
+
+    /**
+     * Get one page of doctors, sorted by id
+     * One more doctor than the page size is read, to know if there is a next page.
+     * @param after the id of the last doctor of the previous page, or null for the first page
+     * @param limit the page size, or null for the default one
+     * @param hal true for the HAL representation
+     * @param exchange the current exchange
+     * @return a page of doctors, with a link to the next page if there is one
+     */
+    private Mono<ResponseEntity<Object>> page(Long after, Integer limit, boolean hal, ServerWebExchange exchange) {
+        if (limit != null && limit <= 0) {
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));  // Error, invalid page size
+        }
+        int size = limit == null ? AppointmentController.DEFAULT_PAGE_SIZE : Math.min(limit, AppointmentController.MAX_PAGE_SIZE);
+        long afterId = after == null ? Long.MIN_VALUE : after;
+        return doctorRepository.findByIdGreaterThan(afterId, size + 1).collectList().flatMap(rows -> {
+            boolean hasNext = rows.size() > size;
+            List<DoctorRow> content = hasNext ? rows.subList(0, size) : rows;
+            List<Long> ids = content.stream().map(DoctorRow::getId).collect(Collectors.toList());
+            Mono<List<AppointmentRow>> appts = ids.isEmpty() ? Mono.just(Collections.emptyList())
+                    : apptRepository.findByDoctorIdIn(ids).collectList();
+            return appts.flatMap(apptRows -> {
+                List<Doctor> doctors = toDoctors(content, apptRows);
+                if (hal) {
+                    return assembler.toSliceModel(doctors, hasNext, after, size, exchange)
+                            .map(model -> new ResponseEntity<Object>(model, HttpStatus.OK));
+                }
+                // Plain JSON: the next page is given by a Link header
+                return assembler.nextLink(doctors, hasNext, size, exchange).map(next -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    next.ifPresent(link -> headers.add(HttpHeaders.LINK, link.toString()));
+                    return new ResponseEntity<Object>(doctors, headers, HttpStatus.OK);
+                });
+            });
+        });
+    }
+
+    /**
+     * Builds the doctors with their appointments
+     * @param doctors the doctor rows
+     * @param appts the appointment rows of these doctors, sorted by id
+     * @return the doctors
+     */
+    private static List<Doctor> toDoctors(List<DoctorRow> doctors, List<AppointmentRow> appts) {
+        Map<Long, List<Appointment>> byDoctor = appts.stream()
+                .filter(appt -> appt.getDoctorId() != null)
+                .collect(Collectors.groupingBy(AppointmentRow::getDoctorId,
+                        Collectors.mapping(AppointmentRow::toAppointment, Collectors.toList())));
+        return doctors.stream()
+                .map(doctor -> doctor.toDoctor(byDoctor.getOrDefault(doctor.getId(), new ArrayList<>())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Get a doctor by its name
+     * The response has the same strong ETag as on the servlet stack.
+     * @param name the doctor name
+     * @return the doctor
+     */
+    @GetMapping("/doctors/{name}")
+    public Mono<ResponseEntity<Object>> getDoctorByName(@PathVariable String name,
+                                                        @RequestHeader(value = "Accept", required = false) String halContent,
+                                                        ServerWebExchange exchange) {
+        Representation representation = Representation.negotiate(halContent);
+        boolean hal = representation.isHal();
+        return doctorRepository.findByName(name)
+                .flatMap(row -> apptRepository.findByDoctorId(row.getId()).map(AppointmentRow::toAppointment).collectList()
+                        .flatMap(appts -> {
+                            Doctor doctor = row.toDoctor(appts);
+                            String eTag = ScheduleVersion.of(row.getId(), row.getVersion(), appts, new Date()).doctorETag(representation);
+                            if (hal) {
+                                return assembler.toModel(doctor, exchange).map(model -> ResponseEntity.ok().eTag(eTag).<Object>body(model));
+                            }
+                            return Mono.just(ResponseEntity.ok().eTag(eTag).<Object>body(doctor));
+                        }))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));  // Error, doctor not found
+    }
+
+    /**
+     * Delete a doctor by its name
+     * @param name the doctor name
+     * @return the doctor deleted
+     */
+    @DeleteMapping("/doctors/{name}")
+    Mono<ResponseEntity<Doctor>> deleteDoctorByName(@PathVariable String name) {
+        return doctorRepository.findByName(name)
+                .flatMap(row -> apptRepository.existsByDoctorId(row.getId())
+                        .flatMap(booked -> booked
+                                ? Mono.just(new ResponseEntity<Doctor>(HttpStatus.CONFLICT))  // Error, doctor has appointments
+                                : doctorRepository.delete(row).thenReturn(new ResponseEntity<>(row.toDoctor(new ArrayList<>()), HttpStatus.OK))))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));  // Error, doctor not found
+    }
+
+    /**
+     * Get all appointments of a doctor
+     * The response has the same strong ETag as on the servlet stack.
+     * @param name the doctor name
+     * @return a list of appointments
+     */
+    @GetMapping("/doctors/{name}/appointments")
+    public Mono<ResponseEntity<Object>> getDoctorAppointments(@PathVariable String name,
+                                                              @RequestHeader(value = "Accept", required = false) String halContent,
+                                                              ServerWebExchange exchange) {
+        Representation representation = Representation.negotiate(halContent);
+        boolean hal = representation.isHal();
+        return doctorRepository.findByName(name)
+                .flatMap(row -> apptRepository.findByDoctorId(row.getId()).map(AppointmentRow::toAppointment).collectList()
+                        .flatMap(appts -> {
+                            // The ETag of the appointments doesn't depend on the doctor version
+                            String eTag = ScheduleVersion.of(row.getId(), 0, appts, new Date()).appointmentsETag(representation);
+                            if (hal) {
+                                return Mono.zip(apptAssembler.toModels(appts, exchange),
+                                        assembler.appointmentsLink(name, IanaLinkRelations.SELF, exchange))
+                                        .map(t -> ResponseEntity.ok().eTag(eTag).<Object>body(CollectionModel.of(t.getT1(), t.getT2())));
+                            }
+                            return Mono.just(ResponseEntity.ok().eTag(eTag).<Object>body(appts));
+                        }))
+                .defaultIfEmpty(new ResponseEntity<>(HttpStatus.NOT_FOUND));  // Error, doctor not found
+    }
+}
@@ -0,0 +1,95 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import fr.univlr.info.AppointmentAPIV1.store.ReadWriteRoutingDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Read-your-writes for the clients of a database with a replica
+ * A POST, PUT, PATCH or DELETE answers with a cookie holding the end of the sticky window,
+ * appointment.datasource.routing.sticky-window after the write. Until then, the reads of that
+ * client go to the primary, so they see the write even if the replica lags behind.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "appointment.datasource.routing.enabled", havingValue = "true")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    /**
+     * The cookie holding the end of the sticky window, in milliseconds since the epoch
+     */
+    public static final String COOKIE = "read-primary-until";
+
+    // How long the reads of a client go to the primary after a write
+    private final Duration stickyWindow;
+
+    /**
+     * Constructor
+     * @param stickyWindow how long the reads of a client go to the primary after a write
+     */
+    public ReadYourWritesFilter(@Value("${appointment.datasource.routing.sticky-window:5s}") Duration stickyWindow) {
+        this.stickyWindow = stickyWindow;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        if (isWrite(request)) {
+            // Set before the body is written, the headers can't be changed afterwards
+            Cookie cookie = new Cookie(COOKIE, Long.toString(now + stickyWindow.toMillis()));
+            cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+            cookie.setMaxAge((int) Math.max(1, stickyWindow.toSeconds() + 1));
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+        } else if (stickyUntil(request) > now) {
+            ReadWriteRoutingDataSource.stickToPrimary();
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReadWriteRoutingDataSource.release();
+        }
+    }
+
+    /**
+     * Tells whether a request modifies the data
+     * @param request the request
+     * @return true for a POST, PUT, PATCH or DELETE
+     */
+    private static boolean isWrite(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        return method == HttpMethod.POST || method == HttpMethod.PUT
+                || method == HttpMethod.PATCH || method == HttpMethod.DELETE;
+    }
+
+    /**
+     * Gets the end of the sticky window of the client
+     * @param request the request
+     * @return the end of the window in milliseconds since the epoch, 0 without a valid cookie
+     */
+    private static long stickyUntil(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        if (cookie == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(cookie.getValue());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package fr.univlr.info.AppointmentAPIV1.controller;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter with one token bucket by client
+ * A bucket holds up to burst tokens and is refilled at rate tokens per second, each request takes one token.
+ * An idle bucket is full again after burst / rate seconds, so it is dropped from the bounded map of the
+ * buckets then, and a client that comes back starts with a full bucket as it would have anyway.
+ */
+public class TokenBucketRateLimiter {
+
+    // The tokens added by nanosecond
+    private final double tokensPerNano;
+    // The capacity of a bucket
+    private final double burst;
+    // The buckets, by client
+    private final Cache<String, Bucket> buckets;
+
+    /**
+     * Constructor
+     * @param rate the tokens added to a bucket by second
+     * @param burst the capacity of a bucket
+     * @param maximumClients the maximum number of buckets kept
+     */
+    public TokenBucketRateLimiter(double rate, int burst, long maximumClients) {
+        if (rate <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate must be positive and the burst at least 1");
+        }
+        this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumClients)
+                .expireAfterAccess(Duration.ofNanos((long) Math.ceil(burst / tokensPerNano)))
+                .build();
+    }
+
+    /**
+     * Takes a token from the bucket of a client
+     * @param client the client
+     * @return 0 if the request is admitted, otherwise the nanoseconds until the bucket has a token again
+     */
+    public long tryAcquire(String client) {
+        return buckets.get(client, key -> new Bucket(burst, System.nanoTime())).tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * The bucket of a client
+     */
+    private class Bucket {
+        // The tokens left
+        private double tokens;
+        // The time of the last refill
+        private long refilledAt;
+
+        /**
+         * Constructor
+         * @param tokens the initial tokens
+         * @param now the current time, in nanoseconds
+         */
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        /**
+         * Refills the bucket then takes a token
+         * @param now the current time, in nanoseconds
+         * @return 0 if a token was taken, otherwise the nanoseconds until there is one
+         */
+        synchronized long tryAcquire(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+        }
+    }
+}
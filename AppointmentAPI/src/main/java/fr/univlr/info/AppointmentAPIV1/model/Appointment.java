@@ -2,6 +2,7 @@ package fr.univlr.info.AppointmentAPIV1.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import fr.univlr.info.AppointmentAPIV1.controller.AppointmentDateConstraint;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentIndexListener;
 
 import javax.persistence.*;
 import java.text.SimpleDateFormat;
@@ -9,13 +10,23 @@ import java.util.Date;
 import java.util.Objects;
 
 @Entity
+@Table(indexes = {
+        // Appointments of a doctor sorted by start date (conflict checks, doctor schedules)
+        @Index(name = "idx_appointment_doctor_start", columnList = "name, startDate"),
+        // Appointments after a date (findByAfterDate)
+        @Index(name = "idx_appointment_start", columnList = "startDate"),
+        // Appointments ended before a date (archival)
+        @Index(name = "idx_appointment_end", columnList = "endDate")})
+@EntityListeners(AppointmentIndexListener.class)
 @AppointmentDateConstraint
 public class Appointment {
+    // Ids are reserved by blocks of 50 (pooled optimizer), so inserts can be batched
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appointment_seq")
+    @SequenceGenerator(name = "appointment_seq", sequenceName = "appointment_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne(targetEntity = Doctor.class)
+    @ManyToOne(targetEntity = Doctor.class, fetch = FetchType.LAZY)
     @JoinColumn(name = "name")
     @JsonIgnore
     private Doctor doctorObj;
@@ -23,6 +34,16 @@ public class Appointment {
     private Date startDate, endDate;
     private String patient;
 
+    // Incremented by each update, gives the ETag of the appointment
+    // A primitive, so that Spring Data still tells new appointments by their id
+    @Version
+    @JsonIgnore
+    private long version;
+
+    // True for a copy read from the archive, null otherwise so that it is not serialized
+    @Transient
+    private Boolean archived;
+
     public Doctor getDoctorObj() {
         return doctorObj;
     }
@@ -41,6 +62,49 @@ public class Appointment {
         this.patient = patient;
     }
 
+    /**
+     * Constructor of a read-only copy, used by the projection queries of the repository
+     * The copy is not managed by the persistence context and has no doctor entity.
+     * @param id the appointment id
+     * @param doctor the doctor name
+     * @param start the start date
+     * @param end the end date
+     * @param patient the patient name
+     * @param version the appointment version
+     */
+    public Appointment(Long id, String doctor, Date start, Date end, String patient, long version) {
+        this(id, doctor, start, end, patient);
+        this.version = version;
+    }
+
+    /**
+     * Constructor of a read-only copy of an archived appointment, used by the projection queries of the archive
+     * @param id the appointment id
+     * @param doctor the doctor name
+     * @param start the start date
+     * @param end the end date
+     * @param patient the patient name
+     * @param version the appointment version
+     * @param archived true
+     */
+    public Appointment(Long id, String doctor, Date start, Date end, String patient, long version, boolean archived) {
+        this(id, doctor, start, end, patient, version);
+        this.archived = archived ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Constructor of a copy with an id
+     * @param id the appointment id
+     * @param doctor the doctor name
+     * @param start the start date
+     * @param end the end date
+     * @param patient the patient name
+     */
+    public Appointment(Long id, String doctor, Date start, Date end, String patient) {
+        this(doctor, start, end, patient);
+        this.id = id;
+    }
+
     public Long getId() {
         return id;
     }
@@ -73,6 +137,18 @@ public class Appointment {
         this.endDate = end;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Boolean getArchived() {
+        return archived;
+    }
+
     public String getPatient() {
         return patient;
     }
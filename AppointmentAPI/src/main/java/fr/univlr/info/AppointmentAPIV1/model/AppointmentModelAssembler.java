@@ -1,17 +1,33 @@
 package fr.univlr.info.AppointmentAPIV1.model;
 
 import fr.univlr.info.AppointmentAPIV1.controller.AppointmentController;
+import org.springframework.data.domain.Slice;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
 import org.springframework.hateoas.server.RepresentationModelAssembler;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 
 public class AppointmentModelAssembler implements RepresentationModelAssembler<Appointment, EntityModel<Appointment>> {
 
+    // The request attribute holding the links of the current request
+    private static final String LINKS_ATTRIBUTE = AppointmentModelAssembler.class.getName() + ".links";
+
+    // The links of the last base URI, rebuilt only when the base URI changes
+    private volatile Links links;
+
     /**
      * Constructor
      */
@@ -21,6 +37,8 @@ public class AppointmentModelAssembler implements RepresentationModelAssembler<A
 
     /**
      * Converts an appointment to an entity model
+     * An archived appointment links to its includeArchived=true URI and is never cancellable,
+     * the cancel link only depends on the appointments of the appointment table.
      * @param entity    the appointment
      * @return         the entity model
      */
@@ -28,20 +46,146 @@ public class AppointmentModelAssembler implements RepresentationModelAssembler<A
     public EntityModel<Appointment> toModel(Appointment entity) {
 
         Date date = new Date();
+        Links links = links();
 
-        if(date.after(entity.getStartDate())) {
+        if(Boolean.TRUE.equals(entity.getArchived())) {
 
             return EntityModel.of(entity,
-                    linkTo(methodOn(AppointmentController.class).one(entity.getId(), null)).withSelfRel(),
-                    linkTo(methodOn(AppointmentController.class).all(null, null)).withRel("appointments"));
+                    links.archived.expand(entity.getId(), IanaLinkRelations.SELF),
+                    links.all);
+        } else if(date.after(entity.getStartDate())) {
+
+            return EntityModel.of(entity,
+                    links.one.expand(entity.getId(), IanaLinkRelations.SELF),
+                    links.all);
         } else {
 
             return EntityModel.of(entity,
-                    linkTo(methodOn(AppointmentController.class).one(entity.getId(), null)).withSelfRel(),
-                    linkTo(methodOn(AppointmentController.class).all(null,null)).withRel("appointments"),
-                    linkTo(methodOn(AppointmentController.class).cancel(entity.getId(),null)).withRel("cancel"));
+                    links.one.expand(entity.getId(), IanaLinkRelations.SELF),
+                    links.all,
+                    links.cancel.expand(entity.getId(), LinkRelation.of("cancel")));
         }
     }
 
-}
+    /**
+     * Gets the links of the base URI of the current request
+     * The base URI is read once per request. The links are built with linkTo(methodOn(...))
+     * once, then reused by all the requests with the same base URI.
+     * @return the links
+     */
+    private Links links() {
+        RequestAttributes request = RequestContextHolder.currentRequestAttributes();
+        Links current = (Links) request.getAttribute(LINKS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (current == null) {
+            String baseUri = ServletUriComponentsBuilder.fromCurrentServletMapping().toUriString();
+            current = links;
+            if (current == null || !current.baseUri.equals(baseUri)) {
+                current = new Links(baseUri);
+                links = current;
+            }
+            request.setAttribute(LINKS_ATTRIBUTE, current, RequestAttributes.SCOPE_REQUEST);
+        }
+        return current;
+    }
+
+    /**
+     * The links of an appointment, for one base URI
+     */
+    private static class Links {
+        // The base URI
+        private final String baseUri;
+        // The link to an appointment, by id
+        private final LinkTemplate one;
+        // The link to an archived appointment, by id
+        private final LinkTemplate archived;
+        // The link to the cancellation of an appointment, by id
+        private final LinkTemplate cancel;
+        // The link to all the appointments
+        private final Link all;
+
+        /**
+         * Constructor
+         * @param baseUri the base URI
+         */
+        private Links(String baseUri) {
+            this.baseUri = baseUri;
+            Link one = linkTo(methodOn(AppointmentController.class).one(null, null)).withSelfRel();
+            this.one = new LinkTemplate(one, "id");
+            this.archived = new LinkTemplate(includingArchived(one), "id");
+            this.cancel = new LinkTemplate(linkTo(methodOn(AppointmentController.class).cancel(null, null)).withSelfRel(), "id");
+            this.all = linkTo(methodOn(AppointmentController.class).all(null, null, null, null)).withRel("appointments");
+        }
+    }
+
+    /**
+     * Converts a page of appointments to a collection model
+     * @param slice the page of appointments
+     * @param date  the date parameter of the request
+     * @param after the id after which the page starts
+     * @param limit the page size
+     * @return the collection model, with self and next links
+     */
+    public CollectionModel<EntityModel<Appointment>> toSliceModel(Slice<Appointment> slice, String date, Long after, int limit) {
+        return toSliceModel(slice, date, after, limit, false);
+    }
 
+    /**
+     * Converts a page of appointments to a collection model
+     * @param slice the page of appointments
+     * @param date  the date parameter of the request
+     * @param after the id after which the page starts
+     * @param limit the page size
+     * @param includeArchived whether the page includes the archived appointments
+     * @return the collection model, with self and next links
+     */
+    public CollectionModel<EntityModel<Appointment>> toSliceModel(Slice<Appointment> slice, String date, Long after, int limit,
+                                                                  boolean includeArchived) {
+        CollectionModel<EntityModel<Appointment>> model = toCollectionModel(slice);
+        Link self = linkTo(methodOn(AppointmentController.class).all(date, after, limit, null)).withSelfRel().expand();
+        model.add(includeArchived ? includingArchived(self) : self);
+        nextLink(slice, date, limit, includeArchived).ifPresent(model::add);
+        return model;
+    }
+
+    /**
+     * Builds the link to the page following a page of appointments
+     * @param slice the page of appointments
+     * @param date  the date parameter of the request
+     * @param limit the page size
+     * @return the next link, or nothing if this is the last page
+     */
+    public Optional<Link> nextLink(Slice<Appointment> slice, String date, int limit) {
+        return nextLink(slice, date, limit, false);
+    }
+
+    /**
+     * Builds the link to the page following a page of appointments
+     * @param slice the page of appointments
+     * @param date  the date parameter of the request
+     * @param limit the page size
+     * @param includeArchived whether the page includes the archived appointments
+     * @return the next link, or nothing if this is the last page
+     */
+    public Optional<Link> nextLink(Slice<Appointment> slice, String date, int limit, boolean includeArchived) {
+        if (!slice.hasNext()) {
+            return Optional.empty();
+        }
+        List<Appointment> content = slice.getContent();
+        Long last = content.get(content.size() - 1).getId();
+        Link next = linkTo(methodOn(AppointmentController.class).all(date, last, limit, null))
+                .withRel(IanaLinkRelations.NEXT).expand();
+        return Optional.of(includeArchived ? includingArchived(next) : next);
+    }
+
+    /**
+     * Adds the includeArchived=true parameter to a link
+     * @param link the link
+     * @return the link to the same resource, archived appointments included
+     */
+    public static Link includingArchived(Link link) {
+        return Link.of(UriComponentsBuilder.fromUriString(link.getHref())
+                .queryParam("includeArchived", true)
+                .build().toUriString(), link.getRel());
+    }
+
+}
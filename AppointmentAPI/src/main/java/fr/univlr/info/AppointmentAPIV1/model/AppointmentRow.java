@@ -0,0 +1,117 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * A row of the appointment table, read and written by the reactive repositories
+ * R2DBC maps no relationship, so the doctor is the id held by the join column of {@link Appointment}.
+ * The API still returns {@link Appointment} copies, so both stacks have the same representations.
+ */
+@Table("appointment")
+public class AppointmentRow {
+    // The appointment id, generated by the database
+    @Id
+    private Long id;
+    // The doctor id
+    @Column("name")
+    private Long doctorId;
+    // The doctor name
+    private String doctor;
+    // The start and end dates, in the time zone of the server like the ones written by Hibernate
+    private LocalDateTime startDate, endDate;
+    // The patient name
+    private String patient;
+    // The version, null until the row is inserted
+    @Version
+    private Long version;
+
+    /**
+     * Default constructor
+     */
+    public AppointmentRow() {
+    }
+
+    /**
+     * Constructor
+     * @param id the appointment id, or null to insert a new row
+     * @param appt the appointment
+     * @param doctorId the doctor id
+     */
+    public AppointmentRow(Long id, Appointment appt, Long doctorId) {
+        this.id = id;
+        this.doctorId = doctorId;
+        setFrom(appt);
+    }
+
+    /**
+     * Copies the doctor name, the dates and the patient of an appointment
+     * @param appt the appointment
+     */
+    public void setFrom(Appointment appt) {
+        this.doctor = appt.getDoctor();
+        this.startDate = toLocal(appt.getStartDate());
+        this.endDate = toLocal(appt.getEndDate());
+        this.patient = appt.getPatient();
+    }
+
+    /**
+     * Converts the row to a read-only copy of the appointment, without the doctor entity
+     * @return the appointment
+     */
+    public Appointment toAppointment() {
+        return new Appointment(id, doctor, toDate(startDate), toDate(endDate), patient, version == null ? 0 : version);
+    }
+
+    /**
+     * Converts a date to a local date time of the server time zone
+     * @param date the date, or null
+     * @return the local date time, or null
+     */
+    public static LocalDateTime toLocal(Date date) {
+        return date == null ? null : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+
+    /**
+     * Converts a local date time of the server time zone to a date
+     * @param date the local date time, or null
+     * @return the date, or null
+     */
+    private static Date toDate(LocalDateTime date) {
+        return date == null ? null : Date.from(date.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getDoctorId() {
+        return doctorId;
+    }
+
+    public String getDoctor() {
+        return doctor;
+    }
+
+    public LocalDateTime getStartDate() {
+        return startDate;
+    }
+
+    public LocalDateTime getEndDate() {
+        return endDate;
+    }
+
+    public String getPatient() {
+        return patient;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,110 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import java.util.Date;
+
+/**
+ * An appointment moved out of the appointment table by the archival job
+ * Keeps the id, the version and the doctor of the appointment, so it is served as it was
+ * by the read endpoints called with includeArchived=true. The doctor id is a plain column:
+ * a doctor with archived appointments only can be deleted, the archive keeps its name.
+ * The id is assigned, so the entity tells Spring Data whether it is new: saving it is a
+ * plain insert, without the select of a merge.
+ */
+@Entity
+@Table(name = "appointment_archive", indexes = {
+        // Archived appointments of a doctor
+        @Index(name = "idx_appointment_archive_doctor", columnList = "doctorId, id"),
+        // Archived appointments after a date
+        @Index(name = "idx_appointment_archive_start", columnList = "startDate")})
+public class ArchivedAppointment implements Persistable<Long> {
+    // The id of the appointment
+    @Id
+    private Long id;
+    // The id of the doctor
+    private Long doctorId;
+    // The doctor name
+    private String doctor;
+    private Date startDate, endDate;
+    private String patient;
+    // The version of the appointment when it was archived
+    private long version;
+    // The date of the archival
+    @Column(nullable = false)
+    private Date archivedAt;
+    // Whether the entity has not been stored yet
+    @Transient
+    private boolean isNew = true;
+
+    public ArchivedAppointment() {
+    }
+
+    /**
+     * Constructor
+     * @param appt the appointment to archive
+     * @param archivedAt the date of the archival
+     */
+    public ArchivedAppointment(Appointment appt, Date archivedAt) {
+        this.id = appt.getId();
+        this.doctorId = appt.getDoctorObj() == null ? null : appt.getDoctorObj().getId();
+        this.doctor = appt.getDoctor();
+        this.startDate = appt.getStartDate();
+        this.endDate = appt.getEndDate();
+        this.patient = appt.getPatient();
+        this.version = appt.getVersion();
+        this.archivedAt = archivedAt;
+    }
+
+    @PostLoad
+    @PostPersist
+    void stored() {
+        this.isNew = false;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @Override
+    public Long getId() {
+        return id;
+    }
+
+    public Long getDoctorId() {
+        return doctorId;
+    }
+
+    public String getDoctor() {
+        return doctor;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public String getPatient() {
+        return patient;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Date getArchivedAt() {
+        return archivedAt;
+    }
+}
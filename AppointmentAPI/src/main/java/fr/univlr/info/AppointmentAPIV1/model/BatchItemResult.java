@@ -0,0 +1,68 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+/**
+ * Result of one appointment of a batch creation
+ * Contains the position of the appointment in the batch, the HTTP status it would
+ * have had if posted alone, and either the created appointment or the error message.
+ */
+public class BatchItemResult {
+    // Position of the appointment in the batch
+    private final int index;
+    // HTTP status code of this appointment
+    private final int status;
+    // The created appointment
+    private final Appointment appointment;
+    // The error message
+    private final String error;
+
+    /**
+     * Constructor
+     * @param index position of the appointment in the batch
+     * @param status HTTP status code of this appointment
+     * @param appointment the created appointment, or null
+     * @param error the error message, or null
+     */
+    private BatchItemResult(int index, int status, Appointment appointment, String error) {
+        this.index = index;
+        this.status = status;
+        this.appointment = appointment;
+        this.error = error;
+    }
+
+    /**
+     * Result of a created appointment
+     * @param index position of the appointment in the batch
+     * @param appointment the created appointment
+     * @return the result
+     */
+    public static BatchItemResult created(int index, Appointment appointment) {
+        return new BatchItemResult(index, 201, appointment, null);
+    }
+
+    /**
+     * Result of a rejected appointment
+     * @param index position of the appointment in the batch
+     * @param status HTTP status code of the error
+     * @param error the error message
+     * @return the result
+     */
+    public static BatchItemResult rejected(int index, int status, String error) {
+        return new BatchItemResult(index, status, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
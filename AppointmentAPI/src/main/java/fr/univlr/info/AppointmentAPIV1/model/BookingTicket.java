@@ -0,0 +1,89 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+/**
+ * Status of a booking queued by POST /api/appointments when the booking queue is enabled
+ * A ticket is pending until the worker of its doctor has processed it, then it holds either
+ * the created appointment or the HTTP status and message of the refusal.
+ */
+public class BookingTicket {
+
+    /**
+     * The states of a booking
+     */
+    public enum Status { PENDING, CREATED, REJECTED }
+
+    // The ticket id
+    private final String ticket;
+    // The state of the booking
+    private final Status status;
+    // HTTP status code the booking would have had if made synchronously, once processed
+    private final Integer httpStatus;
+    // The created appointment
+    private final Appointment appointment;
+    // The error message
+    private final String error;
+
+    /**
+     * Constructor
+     * @param ticket the ticket id
+     * @param status the state of the booking
+     * @param httpStatus HTTP status code of the booking, or null while pending
+     * @param appointment the created appointment, or null
+     * @param error the error message, or null
+     */
+    private BookingTicket(String ticket, Status status, Integer httpStatus, Appointment appointment, String error) {
+        this.ticket = ticket;
+        this.status = status;
+        this.httpStatus = httpStatus;
+        this.appointment = appointment;
+        this.error = error;
+    }
+
+    /**
+     * Ticket of a booking waiting in its queue
+     * @param ticket the ticket id
+     * @return the ticket
+     */
+    public static BookingTicket pending(String ticket) {
+        return new BookingTicket(ticket, Status.PENDING, null, null, null);
+    }
+
+    /**
+     * Ticket of a created appointment
+     * @param appointment the created appointment
+     * @return the ticket
+     */
+    public BookingTicket created(Appointment appointment) {
+        return new BookingTicket(ticket, Status.CREATED, 201, appointment, null);
+    }
+
+    /**
+     * Ticket of a refused booking
+     * @param httpStatus HTTP status code of the error
+     * @param error the error message
+     * @return the ticket
+     */
+    public BookingTicket rejected(int httpStatus, String error) {
+        return new BookingTicket(ticket, Status.REJECTED, httpStatus, null, error);
+    }
+
+    public String getTicket() {
+        return ticket;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Integer getHttpStatus() {
+        return httpStatus;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
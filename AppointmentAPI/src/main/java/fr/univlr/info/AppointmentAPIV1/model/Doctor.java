@@ -1,5 +1,9 @@
 package fr.univlr.info.AppointmentAPIV1.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.OptimisticLock;
+
 import javax.persistence.*;
 import java.sql.Array;
 import java.util.ArrayList;
@@ -13,17 +17,28 @@ import java.util.Objects;
  * Contains the doctor's name and a list of appointments
  */
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_doctor_name", columnNames = "name"))
 public class Doctor {
-    // Doctor's id, generated automatically
+    // Doctor's id, generated automatically by blocks of 50
     @Id
-    @GeneratedValue()
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "doctor_seq")
+    @SequenceGenerator(name = "doctor_seq", sequenceName = "doctor_seq", allocationSize = 50)
     private Long id;
 
     // Doctor's name
     private String name;
 
-    // List of appointments
+    // Doctor's version, incremented by each update of the doctor itself
+    @Version
+    @JsonIgnore
+    private long version;
+
+    // List of appointments sorted by id, loaded for up to 100 doctors at once when not fetched with the doctor
+    // Booking an appointment doesn't update the doctor, so it doesn't increment its version
     @OneToMany(targetEntity = Appointment.class, mappedBy = "doctorObj", orphanRemoval = true)
+    @BatchSize(size = 100)
+    @OrderBy("id")
+    @OptimisticLock(excluded = true)
     private List<Appointment> appointments;
 
     /**
@@ -76,6 +91,15 @@ public class Doctor {
         this.name = name;
     }
 
+    /**
+     * Getter
+     * Gets the doctor's version
+     * @return Doctor's version
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Getter
      * Gets the list of appointments
@@ -103,23 +127,22 @@ public class Doctor {
         return "Doctor{" +
                 "id=" + id +
                 ", doctor name='" + this.name + '\'' +
-                ", appointments='" + this.appointments + '\'' +
                 '}';
     }
 
     /**
      * equals method
+     * Doctors are identified by their name, which is unique, so comparing
+     * two doctors never loads their appointments.
      * @param o Object to compare
      * @return True if the objects are equal, false otherwise
      */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Doctor)) return false;   // instanceof, as o may be a lazy proxy
         Doctor doctor = (Doctor) o;
-        return id.equals(doctor.id) &&
-                name.equals(doctor.name) &&
-                appointments.equals(doctor.appointments);
+        return Objects.equals(name, doctor.getName());
     }
 
     /**
@@ -128,7 +151,7 @@ public class Doctor {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, appointments);
+        return Objects.hashCode(name);
     }
 
     /**
@@ -1,24 +1,119 @@
 package fr.univlr.info.AppointmentAPIV1.model;
 
 import fr.univlr.info.AppointmentAPIV1.controller.DoctorController;
+import org.springframework.data.domain.Slice;
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
 import org.springframework.hateoas.server.RepresentationModelAssembler;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.List;
+import java.util.Optional;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
 
 public class DoctorModelAssembler implements RepresentationModelAssembler<Doctor, EntityModel<Doctor>> {
+
+    // The request attribute holding the links of the current request
+    private static final String LINKS_ATTRIBUTE = DoctorModelAssembler.class.getName() + ".links";
+
+    // The links of the last base URI, rebuilt only when the base URI changes
+    private volatile Links links;
+
     /**
-     * @param entity
-     * @return
+     * Converts a doctor to an entity model
+     * @param entity the doctor
+     * @return the entity model
      */
     @Override
     public EntityModel<Doctor> toModel(Doctor entity) {
+        Links links = links();
         return EntityModel.of(entity, //
-                linkTo(methodOn(DoctorController.class).getDoctorByName(entity.getName(), null)).withSelfRel(),
-                linkTo(methodOn(DoctorController.class).all(null)).withRel("doctors"),
-                linkTo(methodOn(DoctorController.class).getDoctorAppointments(entity.getName(), null)).withRel("appointments"));
+                links.one.expand(entity.getName(), IanaLinkRelations.SELF),
+                links.all,
+                links.appointments.expand(entity.getName(), LinkRelation.of("appointments")));
+    }
+
+    /**
+     * Gets the links of the base URI of the current request
+     * The base URI is read once per request. The links are built with linkTo(methodOn(...))
+     * once, then reused by all the requests with the same base URI.
+     * @return the links
+     */
+    private Links links() {
+        RequestAttributes request = RequestContextHolder.currentRequestAttributes();
+        Links current = (Links) request.getAttribute(LINKS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (current == null) {
+            String baseUri = ServletUriComponentsBuilder.fromCurrentServletMapping().toUriString();
+            current = links;
+            if (current == null || !current.baseUri.equals(baseUri)) {
+                current = new Links(baseUri);
+                links = current;
+            }
+            request.setAttribute(LINKS_ATTRIBUTE, current, RequestAttributes.SCOPE_REQUEST);
+        }
+        return current;
+    }
+
+    /**
+     * The links of a doctor, for one base URI
+     */
+    private static class Links {
+        // The base URI
+        private final String baseUri;
+        // The link to a doctor, by name
+        private final LinkTemplate one;
+        // The link to the appointments of a doctor, by name
+        private final LinkTemplate appointments;
+        // The link to all the doctors
+        private final Link all;
+
+        /**
+         * Constructor
+         * @param baseUri the base URI
+         */
+        private Links(String baseUri) {
+            this.baseUri = baseUri;
+            this.one = new LinkTemplate(linkTo(methodOn(DoctorController.class).getDoctorByName(null, null, null)).withSelfRel(), "name");
+            this.appointments = new LinkTemplate(linkTo(methodOn(DoctorController.class).getDoctorAppointments(null, null, null)).withSelfRel(), "name");
+            this.all = linkTo(methodOn(DoctorController.class).all(null, null, null)).withRel("doctors");
+        }
+    }
+
+    /**
+     * Converts a page of doctors to a collection model
+     * @param slice the page of doctors
+     * @param after the id after which the page starts
+     * @param limit the page size
+     * @return the collection model, with self and next links
+     */
+    public CollectionModel<EntityModel<Doctor>> toSliceModel(Slice<Doctor> slice, Long after, int limit) {
+        CollectionModel<EntityModel<Doctor>> model = toCollectionModel(slice);
+        model.add(linkTo(methodOn(DoctorController.class).all(after, limit, null)).withSelfRel().expand());
+        nextLink(slice, limit).ifPresent(model::add);
+        return model;
+    }
+
+    /**
+     * Builds the link to the page following a page of doctors
+     * @param slice the page of doctors
+     * @param limit the page size
+     * @return the next link, or nothing if this is the last page
+     */
+    public Optional<Link> nextLink(Slice<Doctor> slice, int limit) {
+        if (!slice.hasNext()) {
+            return Optional.empty();
+        }
+        List<Doctor> content = slice.getContent();
+        Long last = content.get(content.size() - 1).getId();
+        return Optional.of(linkTo(methodOn(DoctorController.class).all(last, limit, null))
+                .withRel(IanaLinkRelations.NEXT).expand());
     }
 
 }
@@ -0,0 +1,61 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.util.List;
+
+/**
+ * A row of the doctor table, read and written by the reactive repositories
+ * The appointments aren't mapped, they are read by the appointment repository.
+ */
+@Table("doctor")
+public class DoctorRow {
+    // The doctor id, generated by the database
+    @Id
+    private Long id;
+    // The doctor name
+    private String name;
+    // The version, null until the row is inserted
+    @Version
+    private Long version;
+
+    /**
+     * Default constructor
+     */
+    public DoctorRow() {
+    }
+
+    /**
+     * Constructor
+     * @param name the doctor name
+     */
+    public DoctorRow(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Converts the row to a doctor, with its appointments
+     * @param appointments the appointments of the doctor
+     * @return the doctor
+     */
+    public Doctor toDoctor(List<Appointment> appointments) {
+        Doctor doctor = new Doctor(name);
+        doctor.setId(id);
+        doctor.setAppointments(appointments);
+        return doctor;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getVersion() {
+        return version == null ? 0 : version;
+    }
+}
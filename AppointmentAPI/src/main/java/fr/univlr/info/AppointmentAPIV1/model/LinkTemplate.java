@@ -0,0 +1,47 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Link with one variable, split once around the variable
+ * Expanding it is a string concatenation: no controller proxy is built and no mapping
+ * is resolved, unlike a call to linkTo(methodOn(...)) for each entity.
+ */
+class LinkTemplate {
+
+    // The href before the variable
+    private final String prefix;
+    // The href after the variable
+    private final String suffix;
+
+    /**
+     * Constructor
+     * @param template the link, with the variable not expanded
+     * @param variable the variable name
+     */
+    LinkTemplate(Link template, String variable) {
+        String href = template.getHref();
+        String placeholder = "{" + variable + "}";
+        int index = href.indexOf(placeholder);
+        if (index < 0) {
+            throw new IllegalArgumentException("No variable " + variable + " in " + href);
+        }
+        this.prefix = href.substring(0, index);
+        this.suffix = href.substring(index + placeholder.length());
+    }
+
+    /**
+     * Expands the variable
+     * The value is encoded like linkTo does for a path variable.
+     * @param value the variable value
+     * @param relation the link relation
+     * @return the link
+     */
+    Link expand(Object value, LinkRelation relation) {
+        return Link.of(prefix + UriUtils.encodePath(String.valueOf(value), StandardCharsets.UTF_8) + suffix, relation);
+    }
+}
@@ -0,0 +1,157 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import fr.univlr.info.AppointmentAPIV1.controller.ReactiveAppointmentController;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.methodOn;
+
+/**
+ * The appointment model assembler of the reactive profile
+ * Same links as {@link AppointmentModelAssembler}. The links are built with linkTo(methodOn(...))
+ * once per base URI, then expanded for each appointment.
+ */
+public class ReactiveAppointmentModelAssembler {
+
+    // The links of the last base URI, rebuilt only when the base URI changes
+    private volatile Links links;
+
+    /**
+     * Converts an appointment to an entity model
+     * @param entity the appointment
+     * @param exchange the current exchange
+     * @return the entity model
+     */
+    public Mono<EntityModel<Appointment>> toModel(Appointment entity, ServerWebExchange exchange) {
+        return links(exchange).map(links -> links.toModel(entity, new Date()));
+    }
+
+    /**
+     * Converts a list of appointments to a list of entity models
+     * @param entities the appointments
+     * @param exchange the current exchange
+     * @return the entity models
+     */
+    public Mono<List<EntityModel<Appointment>>> toModels(List<Appointment> entities, ServerWebExchange exchange) {
+        return links(exchange).map(links -> {
+            Date now = new Date();
+            return entities.stream().map(entity -> links.toModel(entity, now)).collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Converts a page of appointments to a collection model
+     * @param content the appointments of the page
+     * @param hasNext true if there is a next page
+     * @param date the date parameter of the request
+     * @param after the id after which the page starts
+     * @param limit the page size
+     * @param exchange the current exchange
+     * @return the collection model, with self and next links
+     */
+    public Mono<CollectionModel<EntityModel<Appointment>>> toSliceModel(List<Appointment> content, boolean hasNext, String date,
+                                                                        Long after, int limit, ServerWebExchange exchange) {
+        return Mono.zip(toModels(content, exchange),
+                linkTo(methodOn(ReactiveAppointmentController.class).all(date, after, limit, null, null), exchange)
+                        .withSelfRel().toMono(Link::expand),
+                nextLink(content, hasNext, date, limit, exchange))
+                .map(t -> {
+                    CollectionModel<EntityModel<Appointment>> model = CollectionModel.of(t.getT1(), t.getT2());
+                    t.getT3().ifPresent(model::add);
+                    return model;
+                });
+    }
+
+    /**
+     * Builds the link to the page following a page of appointments
+     * @param content the appointments of the page
+     * @param hasNext true if there is a next page
+     * @param date the date parameter of the request
+     * @param limit the page size
+     * @param exchange the current exchange
+     * @return the next link, or nothing if this is the last page
+     */
+    public Mono<Optional<Link>> nextLink(List<Appointment> content, boolean hasNext, String date, int limit,
+                                         ServerWebExchange exchange) {
+        if (!hasNext) {
+            return Mono.just(Optional.empty());
+        }
+        Long last = content.get(content.size() - 1).getId();
+        return linkTo(methodOn(ReactiveAppointmentController.class).all(date, last, limit, null, null), exchange)
+                .withRel(IanaLinkRelations.NEXT).toMono(Link::expand).map(Optional::of);
+    }
+
+    /**
+     * Gets the links of the base URI of the current request
+     * @param exchange the current exchange
+     * @return the links
+     */
+    private Mono<Links> links(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        String baseUri = UriComponentsBuilder.fromHttpRequest(request)
+                .replacePath(request.getPath().contextPath().value()).replaceQuery(null).toUriString();
+        Links current = links;
+        if (current != null && current.baseUri.equals(baseUri)) {
+            return Mono.just(current);
+        }
+        return Mono.zip(linkTo(methodOn(ReactiveAppointmentController.class).one(null, null, null), exchange).withSelfRel().toMono(),
+                linkTo(methodOn(ReactiveAppointmentController.class).cancel(null, null, null), exchange).withSelfRel().toMono(),
+                linkTo(methodOn(ReactiveAppointmentController.class).all(null, null, null, null, null), exchange).withRel("appointments").toMono())
+                .map(t -> links = new Links(baseUri, new LinkTemplate(t.getT1(), "id"), new LinkTemplate(t.getT2(), "id"), t.getT3()));
+    }
+
+    /**
+     * The links of an appointment, for one base URI
+     */
+    private static class Links {
+        // The base URI
+        private final String baseUri;
+        // The link to an appointment, by id
+        private final LinkTemplate one;
+        // The link to the cancellation of an appointment, by id
+        private final LinkTemplate cancel;
+        // The link to all the appointments
+        private final Link all;
+
+        /**
+         * Constructor
+         * @param baseUri the base URI
+         * @param one the link to an appointment
+         * @param cancel the link to the cancellation of an appointment
+         * @param all the link to all the appointments
+         */
+        private Links(String baseUri, LinkTemplate one, LinkTemplate cancel, Link all) {
+            this.baseUri = baseUri;
+            this.one = one;
+            this.cancel = cancel;
+            this.all = all;
+        }
+
+        /**
+         * Converts an appointment to an entity model, with a cancel link if it hasn't started
+         * @param entity the appointment
+         * @param now the current date
+         * @return the entity model
+         */
+        private EntityModel<Appointment> toModel(Appointment entity, Date now) {
+            if (now.after(entity.getStartDate())) {
+                return EntityModel.of(entity, one.expand(entity.getId(), IanaLinkRelations.SELF), all);
+            }
+            return EntityModel.of(entity, one.expand(entity.getId(), IanaLinkRelations.SELF), all,
+                    cancel.expand(entity.getId(), LinkRelation.of("cancel")));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import fr.univlr.info.AppointmentAPIV1.controller.ReactiveDoctorController;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.reactive.WebFluxLinkBuilder.methodOn;
+
+/**
+ * The doctor model assembler of the reactive profile
+ * Same links as {@link DoctorModelAssembler}. The links are built with linkTo(methodOn(...))
+ * once per base URI, then expanded for each doctor.
+ */
+public class ReactiveDoctorModelAssembler {
+
+    // The links of the last base URI, rebuilt only when the base URI changes
+    private volatile Links links;
+
+    /**
+     * Converts a doctor to an entity model
+     * @param entity the doctor
+     * @param exchange the current exchange
+     * @return the entity model
+     */
+    public Mono<EntityModel<Doctor>> toModel(Doctor entity, ServerWebExchange exchange) {
+        return links(exchange).map(links -> links.toModel(entity));
+    }
+
+    /**
+     * Converts a list of doctors to a list of entity models
+     * @param entities the doctors
+     * @param exchange the current exchange
+     * @return the entity models
+     */
+    public Mono<List<EntityModel<Doctor>>> toModels(List<Doctor> entities, ServerWebExchange exchange) {
+        return links(exchange).map(links -> entities.stream().map(links::toModel).collect(Collectors.toList()));
+    }
+
+    /**
+     * Gets the link to the appointments of a doctor
+     * @param name the doctor name
+     * @param relation the link relation
+     * @param exchange the current exchange
+     * @return the link
+     */
+    public Mono<Link> appointmentsLink(String name, LinkRelation relation, ServerWebExchange exchange) {
+        return links(exchange).map(links -> links.appointments.expand(name, relation));
+    }
+
+    /**
+     * Converts a page of doctors to a collection model
+     * @param content the doctors of the page
+     * @param hasNext true if there is a next page
+     * @param after the id after which the page starts
+     * @param limit the page size
+     * @param exchange the current exchange
+     * @return the collection model, with self and next links
+     */
+    public Mono<CollectionModel<EntityModel<Doctor>>> toSliceModel(List<Doctor> content, boolean hasNext, Long after, int limit,
+                                                                   ServerWebExchange exchange) {
+        return Mono.zip(toModels(content, exchange),
+                linkTo(methodOn(ReactiveDoctorController.class).all(after, limit, null, null), exchange)
+                        .withSelfRel().toMono(Link::expand),
+                nextLink(content, hasNext, limit, exchange))
+                .map(t -> {
+                    CollectionModel<EntityModel<Doctor>> model = CollectionModel.of(t.getT1(), t.getT2());
+                    t.getT3().ifPresent(model::add);
+                    return model;
+                });
+    }
+
+    /**
+     * Builds the link to the page following a page of doctors
+     * @param content the doctors of the page
+     * @param hasNext true if there is a next page
+     * @param limit the page size
+     * @param exchange the current exchange
+     * @return the next link, or nothing if this is the last page
+     */
+    public Mono<Optional<Link>> nextLink(List<Doctor> content, boolean hasNext, int limit, ServerWebExchange exchange) {
+        if (!hasNext) {
+            return Mono.just(Optional.empty());
+        }
+        Long last = content.get(content.size() - 1).getId();
+        return linkTo(methodOn(ReactiveDoctorController.class).all(last, limit, null, null), exchange)
+                .withRel(IanaLinkRelations.NEXT).toMono(Link::expand).map(Optional::of);
+    }
+
+    /**
+     * Gets the links of the base URI of the current request
+     * @param exchange the current exchange
+     * @return the links
+     */
+    private Mono<Links> links(ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        String baseUri = UriComponentsBuilder.fromHttpRequest(request)
+                .replacePath(request.getPath().contextPath().value()).replaceQuery(null).toUriString();
+        Links current = links;
+        if (current != null && current.baseUri.equals(baseUri)) {
+            return Mono.just(current);
+        }
+        return Mono.zip(linkTo(methodOn(ReactiveDoctorController.class).getDoctorByName(null, null, null), exchange).withSelfRel().toMono(),
+                linkTo(methodOn(ReactiveDoctorController.class).getDoctorAppointments(null, null, null), exchange).withSelfRel().toMono(),
+                linkTo(methodOn(ReactiveDoctorController.class).all(null, null, null, null), exchange).withRel("doctors").toMono())
+                .map(t -> links = new Links(baseUri, new LinkTemplate(t.getT1(), "name"), new LinkTemplate(t.getT2(), "name"), t.getT3()));
+    }
+
+    /**
+     * The links of a doctor, for one base URI
+     */
+    private static class Links {
+        // The base URI
+        private final String baseUri;
+        // The link to a doctor, by name
+        private final LinkTemplate one;
+        // The link to the appointments of a doctor, by name
+        private final LinkTemplate appointments;
+        // The link to all the doctors
+        private final Link all;
+
+        /**
+         * Constructor
+         * @param baseUri the base URI
+         * @param one the link to a doctor
+         * @param appointments the link to the appointments of a doctor
+         * @param all the link to all the doctors
+         */
+        private Links(String baseUri, LinkTemplate one, LinkTemplate appointments, Link all) {
+            this.baseUri = baseUri;
+            this.one = one;
+            this.appointments = appointments;
+            this.all = all;
+        }
+
+        /**
+         * Converts a doctor to an entity model
+         * @param entity the doctor
+         * @return the entity model
+         */
+        private EntityModel<Doctor> toModel(Doctor entity) {
+            return EntityModel.of(entity,
+                    one.expand(entity.getName(), IanaLinkRelations.SELF),
+                    all,
+                    appointments.expand(entity.getName(), LinkRelation.of("appointments")));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+
+/**
+ * The representations of the resources, negotiated from the Accept header of the request
+ * The controllers only need to know whether to return HAL models or plain objects, the message
+ * converters then write the plain objects as JSON, CBOR or Smile. The ETags differ by representation.
+ */
+public enum Representation {
+    JSON(MediaType.APPLICATION_JSON, ""),
+    HAL(MediaTypes.HAL_JSON, "-hal"),
+    CBOR(MediaType.APPLICATION_CBOR, "-cbor"),
+    SMILE(new MediaType("application", "x-jackson-smile"), "-smile");
+
+    /**
+     * The Smile media type, binary JSON
+     */
+    public static final MediaType APPLICATION_SMILE = SMILE.getMediaType();
+
+    // The media type
+    private final MediaType mediaType;
+    // The suffix of the ETags
+    private final String eTagSuffix;
+
+    /**
+     * Constructor
+     * @param mediaType the media type
+     * @param eTagSuffix the suffix of the ETags
+     */
+    Representation(MediaType mediaType, String eTagSuffix) {
+        this.mediaType = mediaType;
+        this.eTagSuffix = eTagSuffix;
+    }
+
+    /**
+     * Negotiates the representation of a response, like the message converters do
+     * The accepted media types are sorted by specificity and quality, the first one compatible with a
+     * representation wins: no header or a wildcard gives JSON.
+     * @param accept the Accept header, or null
+     * @return the representation
+     */
+    public static Representation negotiate(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            for (Representation representation : values()) {   // In order of preference
+                if (type.isCompatibleWith(representation.mediaType)) {
+                    return representation;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * Tells whether the response is a HAL model
+     * @return true for HAL
+     */
+    public boolean isHal() {
+        return this == HAL;
+    }
+
+    /**
+     * Gets the media type
+     * @return the media type
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Gets the suffix of the ETags, so that two representations of a resource never share an ETag
+     * @return the suffix, empty for JSON
+     */
+    public String getETagSuffix() {
+        return eTagSuffix;
+    }
+}
@@ -0,0 +1,31 @@
+package fr.univlr.info.AppointmentAPIV1.model;
+
+import java.util.Date;
+
+/**
+ * A free time window in the schedule of a doctor
+ */
+public class TimeWindow {
+    // The start date of the window
+    private final Date start;
+    // The end date of the window, excluded
+    private final Date end;
+
+    /**
+     * Constructor
+     * @param start the start date of the window
+     * @param end the end date of the window, excluded
+     */
+    public TimeWindow(Date start, Date end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public Date getStart() {
+        return start;
+    }
+
+    public Date getEnd() {
+        return end;
+    }
+}
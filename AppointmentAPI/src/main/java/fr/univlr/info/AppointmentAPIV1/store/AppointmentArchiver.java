@@ -0,0 +1,123 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.ArchivedAppointment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Scheduled job moving the appointments ended for longer than appointment.archive.horizon
+ * from the appointment table to the archive, every appointment.archive.interval
+ * The appointments are moved by batches of appointment.archive.batch-size, one transaction each,
+ * so a run never holds many rows locked. They are removed as entities, so the schedule index
+ * forgets them once each batch is committed: conflict checks only see the appointment table.
+ * Disabled unless appointment.archive.enabled=true.
+ */
+@Component
+@Profile("!reactive")
+@ConditionalOnProperty(name = "appointment.archive.enabled", havingValue = "true")
+public class AppointmentArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(AppointmentArchiver.class);
+
+    // The appointment repository
+    private final AppointmentRepository apptRepository;
+    // The archive
+    private final ArchivedAppointmentRepository archiveRepository;
+    // The transaction of each batch
+    private final TransactionTemplate transaction;
+    // The archived appointments
+    private final Counter archived;
+    // How long after their end the appointments are archived
+    private final Duration horizon;
+    // The maximum number of appointments moved by one transaction
+    private final int batchSize;
+
+    /**
+     * Constructor
+     * @param apptRepository the appointment repository
+     * @param archiveRepository the archive
+     * @param transactionManager the transaction manager
+     * @param meterRegistry the registry of the metrics
+     * @param horizon how long after their end the appointments are archived
+     * @param batchSize the maximum number of appointments moved by one transaction
+     */
+    public AppointmentArchiver(AppointmentRepository apptRepository, ArchivedAppointmentRepository archiveRepository,
+                               PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                               @Value("${appointment.archive.horizon:365d}") Duration horizon,
+                               @Value("${appointment.archive.batch-size:500}") int batchSize) {
+        this.apptRepository = apptRepository;
+        this.archiveRepository = archiveRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.archived = Counter.builder("appointment.archived")
+                .description("Appointments moved to the archive")
+                .register(meterRegistry);
+        this.horizon = horizon;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Archives the appointments ended before the horizon
+     * @return the number of appointments archived
+     */
+    @Scheduled(initialDelayString = "${appointment.archive.interval:PT1H}", fixedDelayString = "${appointment.archive.interval:PT1H}")
+    public int archive() {
+        return archive(new Date(System.currentTimeMillis() - horizon.toMillis()));
+    }
+
+    /**
+     * Archives the appointments ended before a date
+     * @param before the date
+     * @return the number of appointments archived
+     */
+    public int archive(Date before) {
+        int total = 0;
+        int moved;
+        do {
+            try {
+                moved = transaction.execute(status -> archiveBatch(before));
+            } catch (OptimisticLockingFailureException e) {
+                // An appointment of the batch has just been modified, it will be archived by the next run
+                log.warn("Archival stopped by a concurrent update", e);
+                break;
+            }
+            total += moved;
+        } while (moved == batchSize);
+        if (total > 0) {
+            log.info("{} appointments ended before {} archived", total, before);
+        }
+        return total;
+    }
+
+    /**
+     * Moves one batch of appointments to the archive
+     * @param before the end date of the appointments to archive
+     * @return the number of appointments moved
+     */
+    private int archiveBatch(Date before) {
+        List<Appointment> batch = apptRepository.findEndedBefore(before, PageRequest.of(0, batchSize));
+        Date now = new Date();
+        archiveRepository.saveAll(batch.stream()
+                .map(appt -> new ArchivedAppointment(appt, now))
+                .collect(Collectors.toList()));
+        apptRepository.deleteAll(batch);    // Versioned deletes, the index is updated after the commit
+        archived.increment(batch.size());
+        return batch.size();
+    }
+}
@@ -0,0 +1,67 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.stream.Stream;
+
+/**
+ * Writes appointments as newline delimited JSON (one appointment per line)
+ * The appointments are read with a database cursor and written one by one, then detached,
+ * so the memory used doesn't depend on the number of appointments.
+ */
+@Component
+@Profile("!reactive")
+public class AppointmentExporter {
+
+    // The appointment repository
+    private final AppointmentRepository apptRepository;
+    // The entity manager, used to detach the appointments once written
+    private final EntityManager entityManager;
+    // The JSON writer of one appointment
+    private final ObjectWriter writer;
+
+    /**
+     * Constructor
+     * @param apptRepository the appointment repository
+     * @param entityManager the entity manager
+     * @param objectMapper the JSON object mapper
+     */
+    public AppointmentExporter(AppointmentRepository apptRepository, EntityManager entityManager, ObjectMapper objectMapper) {
+        this.apptRepository = apptRepository;
+        this.entityManager = entityManager;
+        this.writer = objectMapper.writerFor(Appointment.class);
+    }
+
+    /**
+     * Writes the appointments to an output stream
+     * @param date only the appointments starting after this date, or null for all the appointments
+     * @param out the output stream
+     * @throws IOException if the output stream can't be written
+     */
+    @Transactional(readOnly = true)
+    public void export(Date date, OutputStream out) throws IOException {
+        try (Stream<Appointment> appts = date == null ? apptRepository.streamAll() : apptRepository.streamByAfterDate(date)) {
+            appts.forEach(appt -> {
+                try {
+                    out.write(writer.writeValueAsBytes(appt));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                entityManager.detach(appt);     // Keeps the persistence context empty
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA listener keeping the {@link DoctorScheduleIndex} in sync with the appointment writes
+ * Changes are applied once the transaction is committed, so a rollback never reaches the index.
+ */
+public class AppointmentIndexListener {
+
+    // The index of the doctors' schedules
+    private final DoctorScheduleIndex scheduleIndex;
+
+    /**
+     * Constructor
+     * @param scheduleIndex the index of the doctors' schedules
+     */
+    public AppointmentIndexListener(DoctorScheduleIndex scheduleIndex) {
+        this.scheduleIndex = scheduleIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    void saved(Appointment appt) {
+        afterCommit(() -> scheduleIndex.put(appt));
+    }
+
+    @PostRemove
+    void removed(Appointment appt) {
+        afterCommit(() -> scheduleIndex.remove(appt));
+    }
+
+    /**
+     * Runs an action after the current transaction commits, or now if there is no transaction
+     * @param action the action
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
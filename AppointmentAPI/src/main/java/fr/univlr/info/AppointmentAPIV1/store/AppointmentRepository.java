@@ -1,20 +1,166 @@
 package fr.univlr.info.AppointmentAPIV1.store;
 
 import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 public interface AppointmentRepository extends JpaRepository<Appointment,Long> {
 
     /**
-     * Finds all appointments after the date parameter
+     * Selects only the columns returned by the API, as read-only copies of the appointments
+     * The copies are built by a constructor expression: they are not managed, so Hibernate
+     * neither snapshots them nor checks them at flush, and the doctor is never joined.
+     */
+    String VIEW = "SELECT new fr.univlr.info.AppointmentAPIV1.model.Appointment(a.id, a.doctor, a.startDate, a.endDate, a.patient, a.version) FROM Appointment a";
+
+    /**
+     * Finds all appointments, as read-only copies
+     * @return a list of appointments
+     */
+    @Query(VIEW)
+    List<Appointment> findAllViews();
+
+    /**
+     * Finds an appointment by its id, as a read-only copy
+     * @param id the appointment id
+     * @return the appointment, if it exists
+     */
+    @Query(VIEW + " WHERE a.id = :id")
+    Optional<Appointment> findViewById(@Param("id") Long id);
+
+    /**
+     * Finds all appointments of a doctor, as read-only copies sorted by id
+     * @param doctorId the doctor id
+     * @return a list of appointments
+     */
+    @Query(VIEW + " WHERE a.doctorObj.id = :doctorId ORDER BY a.id")
+    List<Appointment> findViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    /**
+     * Finds all appointments after the date parameter, as read-only copies
      * @param date the date
      * @return a list of appointments
      */
-    @Query("SELECT a FROM Appointment a WHERE a.startDate > :date")
+    @Query(VIEW + " WHERE a.startDate > :date")
     List<Appointment> findByAfterDate(@Param("date") Date date);
+
+    /**
+     * Streams all the appointments, sorted by id
+     * The stream must be read in a transaction and closed.
+     * @return a stream of appointments
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("SELECT a FROM Appointment a ORDER BY a.id")
+    Stream<Appointment> streamAll();
+
+    /**
+     * Streams all the appointments after the date parameter, sorted by id
+     * The stream must be read in a transaction and closed.
+     * @param date the date
+     * @return a stream of appointments
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("SELECT a FROM Appointment a WHERE a.startDate > :date ORDER BY a.id")
+    Stream<Appointment> streamByAfterDate(@Param("date") Date date);
+
+    /**
+     * Finds a page of appointments with an id greater than the id parameter, as read-only copies
+     * @param id the id of the last appointment of the previous page
+     * @param pageable the page size and sort order
+     * @return a page of appointments
+     */
+    @Query(VIEW + " WHERE a.id > :id")
+    Slice<Appointment> findByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Finds a page of appointments after the date parameter, with an id greater than the id parameter,
+     * as read-only copies
+     * @param date the date
+     * @param id the id of the last appointment of the previous page
+     * @param pageable the page size and sort order
+     * @return a page of appointments
+     */
+    @Query(VIEW + " WHERE a.startDate > :date AND a.id > :id")
+    Slice<Appointment> findByStartDateAfterAndIdGreaterThan(@Param("date") Date date, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Finds appointments ended before the date parameter, to be archived
+     * @param date the date
+     * @param pageable the batch size
+     * @return a batch of appointments
+     */
+    @Query("SELECT a FROM Appointment a WHERE a.endDate < :date")
+    List<Appointment> findEndedBefore(@Param("date") Date date, Pageable pageable);
+
+    /**
+     * Finds the time slots of all the appointments of a doctor
+     * @param doctorId the doctor id
+     * @return a list of time slots
+     */
+    @Query("SELECT a.id AS id, a.startDate AS startDate, a.endDate AS endDate FROM Appointment a WHERE a.doctorObj.id = :doctorId")
+    List<AppointmentSlot> findSlotsByDoctorId(@Param("doctorId") Long doctorId);
+
+    /**
+     * Tells whether a doctor has appointments, without loading them
+     * @param doctorId the doctor id
+     * @return true if the doctor has at least one appointment
+     */
+    boolean existsByDoctorObjId(Long doctorId);
+
+    /**
+     * Deletes all the appointments with one statement, without loading them
+     * The persistence context is flushed before and cleared after, so no loaded doctor keeps
+     * the deleted appointments in its collection. The schedule index must be evicted by the caller.
+     * @return the number of appointments deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Appointment a")
+    int deleteAllInBulk();
+
+    /**
+     * Deletes the appointments starting before the date parameter, with one statement
+     * @param date the date
+     * @return the number of appointments deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Appointment a WHERE a.startDate < :date")
+    int deleteByStartDateBefore(@Param("date") Date date);
+
+    /**
+     * Deletes the appointments of a doctor, with one statement
+     * @param doctorId the doctor id
+     * @return the number of appointments deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Appointment a WHERE a.doctorObj.id = :doctorId")
+    int deleteByDoctorId(@Param("doctorId") Long doctorId);
+
+    /**
+     * Deletes the appointments of a doctor starting before the date parameter, with one statement
+     * @param doctorId the doctor id
+     * @param date the date
+     * @return the number of appointments deleted
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Appointment a WHERE a.doctorObj.id = :doctorId AND a.startDate < :date")
+    int deleteByDoctorIdAndStartDateBefore(@Param("doctorId") Long doctorId, @Param("date") Date date);
 }
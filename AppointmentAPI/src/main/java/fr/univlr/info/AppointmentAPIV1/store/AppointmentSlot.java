@@ -0,0 +1,15 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import java.util.Date;
+
+/**
+ * Read-only projection of an appointment time slot
+ * Only selects the columns needed to check booking conflicts
+ */
+public interface AppointmentSlot {
+    Long getId();
+
+    Date getStartDate();
+
+    Date getEndDate();
+}
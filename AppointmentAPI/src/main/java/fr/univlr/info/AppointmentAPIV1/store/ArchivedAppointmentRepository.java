@@ -0,0 +1,84 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.ArchivedAppointment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The archive of the appointments, read by the endpoints called with includeArchived=true
+ * Its queries mirror the ones of {@link AppointmentRepository}, the archived appointments
+ * are returned as read-only copies of appointments marked as archived.
+ */
+public interface ArchivedAppointmentRepository extends JpaRepository<ArchivedAppointment, Long> {
+
+    /**
+     * Selects the archived appointments as read-only copies of appointments
+     */
+    String VIEW = "SELECT new fr.univlr.info.AppointmentAPIV1.model.Appointment(a.id, a.doctor, a.startDate, a.endDate, a.patient, a.version, true) FROM ArchivedAppointment a";
+
+    /**
+     * Finds all archived appointments, as read-only copies
+     * @return a list of appointments
+     */
+    @Query(VIEW)
+    List<Appointment> findAllViews();
+
+    /**
+     * Finds an archived appointment by its id, as a read-only copy
+     * @param id the appointment id
+     * @return the appointment, if it has been archived
+     */
+    @Query(VIEW + " WHERE a.id = :id")
+    Optional<Appointment> findViewById(@Param("id") Long id);
+
+    /**
+     * Finds all archived appointments of a doctor, as read-only copies sorted by id
+     * @param doctorId the doctor id
+     * @return a list of appointments
+     */
+    @Query(VIEW + " WHERE a.doctorId = :doctorId ORDER BY a.id")
+    List<Appointment> findViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    /**
+     * Checks if a doctor has archived appointments
+     * @param doctorId the doctor id
+     * @return true if the archive holds an appointment of the doctor
+     */
+    boolean existsByDoctorId(Long doctorId);
+
+    /**
+     * Finds all archived appointments after the date parameter, as read-only copies
+     * @param date the date
+     * @return a list of appointments
+     */
+    @Query(VIEW + " WHERE a.startDate > :date")
+    List<Appointment> findByAfterDate(@Param("date") Date date);
+
+    /**
+     * Finds a page of archived appointments with an id greater than the id parameter, as read-only copies
+     * @param id the id of the last appointment of the previous page
+     * @param pageable the page size and sort order
+     * @return a page of appointments
+     */
+    @Query(VIEW + " WHERE a.id > :id")
+    Slice<Appointment> findByIdGreaterThan(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Finds a page of archived appointments after the date parameter, with an id greater than the id parameter,
+     * as read-only copies
+     * @param date the date
+     * @param id the id of the last appointment of the previous page
+     * @param pageable the page size and sort order
+     * @return a page of appointments
+     */
+    @Query(VIEW + " WHERE a.startDate > :date AND a.id > :id")
+    Slice<Appointment> findByStartDateAfterAndIdGreaterThan(@Param("date") Date date, @Param("id") Long id, Pageable pageable);
+}
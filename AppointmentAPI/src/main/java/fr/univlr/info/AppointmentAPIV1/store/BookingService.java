@@ -0,0 +1,80 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Books a single appointment in one transaction
+ * The doctor lookup, or its insert when it doesn't exist, the conflict check and the insert of
+ * the appointment share one transaction and one flush: a booking commits once. The doctor is
+ * not saved again, the appointment owns the relationship. The transaction runs inside the lock
+ * of the doctor, so the schedule index is up to date when the next booking of the doctor checks it.
+ */
+@Component
+@Profile("!reactive")
+public class BookingService {
+
+    // The appointment repository
+    private final AppointmentRepository apptRepository;
+    // The doctor repository
+    private final DoctorRepository doctorRepository;
+    // The cache of the doctors, by name
+    private final DoctorCache doctorCache;
+    // The index of the doctors' schedules
+    private final DoctorScheduleIndex scheduleIndex;
+    // The locks serializing the bookings of a same doctor
+    private final DoctorLocks doctorLocks;
+    // The transaction of a booking
+    private final TransactionTemplate transaction;
+
+    /**
+     * Constructor
+     * @param apptRepository the appointment repository
+     * @param doctorRepository the doctor repository
+     * @param doctorCache the cache of the doctors, by name
+     * @param scheduleIndex the index of the doctors' schedules
+     * @param doctorLocks the locks serializing the bookings of a same doctor
+     * @param transactionManager the transaction manager
+     */
+    public BookingService(AppointmentRepository apptRepository, DoctorRepository doctorRepository,
+                          DoctorCache doctorCache, DoctorScheduleIndex scheduleIndex, DoctorLocks doctorLocks,
+                          PlatformTransactionManager transactionManager) {
+        this.apptRepository = apptRepository;
+        this.doctorRepository = doctorRepository;
+        this.doctorCache = doctorCache;
+        this.scheduleIndex = scheduleIndex;
+        this.doctorLocks = doctorLocks;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Books an appointment, creating its doctor if needed
+     * @param appt the appointment, validated
+     * @return the appointment created, or null if it overlaps an appointment of the doctor
+     */
+    public Appointment book(Appointment appt) {
+        Lock lock = doctorLocks.lockFor(appt.getDoctor());
+        lock.lock();
+        try {
+            return transaction.execute(status -> {
+                Doctor doctor = doctorCache.findByName(appt.getDoctor());
+                if (doctor == null) {
+                    doctor = doctorRepository.save(new Doctor(appt.getDoctor()));
+                    doctorCache.put(doctor);
+                } else if (scheduleIndex.overlaps(doctor.getId(), appt.getStartDate(), appt.getEndDate())) {
+                    return null;    // A new doctor has no appointment yet
+                }
+                appt.setDoctorObj(doctor);
+                return apptRepository.save(appt);   // Inserted by the flush of the commit
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+}
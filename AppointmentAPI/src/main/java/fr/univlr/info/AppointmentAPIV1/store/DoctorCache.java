@@ -0,0 +1,208 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the doctor ids, by doctor name
+ * Turns the lookup of a doctor by name into a lookup by primary key. Only ids are cached,
+ * never the entities, so a doctor is always read in the persistence context of the request.
+ * With appointment.datasource.routing.enabled, a read-only transaction may read a replica lagging behind:
+ * a doctor missing there may be still replicating rather than deleted, so such a miss answers from the
+ * replica but never drops the cached id. Only the reads of the primary correct the cache.
+ */
+@Component
+@Profile("!reactive")
+public class DoctorCache {
+
+    // The doctor repository
+    private final DoctorRepository doctorRepository;
+    // The doctor ids, by doctor name
+    private final Cache<String, Long> ids;
+    // Whether the read-only transactions are routed to a replica
+    private final boolean routing;
+
+    /**
+     * Constructor
+     * @param doctorRepository the doctor repository
+     * @param maximumSize the maximum number of names kept in the cache
+     * @param expireAfterWrite how long a name is kept in the cache
+     * @param routing whether the read-only transactions are routed to a replica
+     */
+    public DoctorCache(DoctorRepository doctorRepository,
+                       @Value("${appointment.doctor-cache.maximum-size:10000}") long maximumSize,
+                       @Value("${appointment.doctor-cache.expire-after-write:10m}") Duration expireAfterWrite,
+                       @Value("${appointment.datasource.routing.enabled:false}") boolean routing) {
+        this.doctorRepository = doctorRepository;
+        this.routing = routing;
+        this.ids = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Finds a doctor by its name
+     * @param name the doctor name
+     * @return the doctor, or null if it doesn't exist
+     */
+    public Doctor findByName(String name) {
+        return find(name, doctorRepository::findById, doctorRepository::findByName);
+    }
+
+    /**
+     * Finds a doctor by its name, with its appointments in the same query
+     * @param name the doctor name
+     * @return the doctor, or null if it doesn't exist
+     */
+    public Doctor findWithAppointmentsByName(String name) {
+        return find(name, doctorRepository::findWithAppointmentsById, doctorRepository::findWithAppointmentsByName);
+    }
+
+    /**
+     * Finds the id of a doctor by its name
+     * The database is not read when the name is in the cache, so the id may be stale if the doctor has been
+     * deleted behind the cache: only for the callers whose result tells it, see {@link #refreshIdByName(String)},
+     * the other ones use {@link #findConfirmedIdByName(String)}.
+     * @param name the doctor name
+     * @return the doctor id, or null if it doesn't exist
+     */
+    public Long findIdByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        Long id = ids.getIfPresent(name);
+        if (id == null) {
+            id = doctorRepository.findIdByName(name);
+            if (id != null) {
+                ids.put(name, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Finds the id of a doctor by its name, checking that a cached id still exists
+     * A cached id costs a lookup by primary key; a stale one is replaced by the id read by name.
+     * @param name the doctor name
+     * @return the doctor id, or null if it doesn't exist
+     */
+    public Long findConfirmedIdByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        Long id = ids.getIfPresent(name);
+        if (id != null && doctorRepository.existsById(id)) {
+            return id;
+        }
+        return refreshIdByName(name);
+    }
+
+    /**
+     * Finds the id of a doctor by its name again, when the cached one turned out to be stale
+     * On a replica the cached id may only be not replicated yet, so it is kept.
+     * @param name the doctor name
+     * @return the doctor id, or null if it doesn't exist
+     */
+    public Long refreshIdByName(String name) {
+        if (readsReplica()) {
+            return name == null ? null : doctorRepository.findIdByName(name);
+        }
+        ids.invalidate(name);
+        return findIdByName(name);
+    }
+
+    /**
+     * Finds a doctor by its id if its name is in the cache, by its name otherwise
+     * @param name the doctor name
+     * @param byId the query by id
+     * @param byName the query by name
+     * @return the doctor, or null if it doesn't exist
+     */
+    private Doctor find(String name, Function<Long, Optional<Doctor>> byId, Function<String, Doctor> byName) {
+        if (name == null) {
+            return null;
+        }
+        Long id = ids.getIfPresent(name);
+        if (id != null) {
+            Optional<Doctor> doctor = byId.apply(id);
+            if (doctor.isPresent()) {
+                return doctor.get();
+            }
+            if (readsReplica()) {
+                return byName.apply(name);  // Maybe not replicated yet, the cached id is kept
+            }
+            ids.invalidate(name);   // The doctor has been deleted behind the cache
+        }
+        Doctor doctor = byName.apply(name);
+        if (doctor != null) {
+            ids.put(name, doctor.getId());
+        }
+        return doctor;
+    }
+
+    /**
+     * Tells whether the current transaction reads a replica, which may lag behind the primary
+     * @return true in a read-only transaction routed to the replica
+     */
+    private boolean readsReplica() {
+        return routing && ReadWriteRoutingDataSource.currentTarget() == ReadWriteRoutingDataSource.Target.REPLICA;
+    }
+
+    /**
+     * Records a doctor just created
+     * In a transaction, the doctor is recorded once it commits: a rollback, like the unique name
+     * violation of a doctor created by another instance, never leaves an id that doesn't exist.
+     * @param doctor the doctor
+     */
+    public void put(Doctor doctor) {
+        String name = doctor.getName();
+        Long id = doctor.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.put(name, id);
+                }
+            });
+        } else {
+            ids.put(name, id);
+        }
+    }
+
+    /**
+     * Forgets a doctor
+     * @param name the doctor name
+     */
+    public void invalidate(String name) {
+        ids.invalidate(name);
+    }
+
+    /**
+     * Gets the statistics of the cache
+     * @return the hit, miss and eviction counts
+     */
+    public CacheStats stats() {
+        return ids.stats();
+    }
+
+    /**
+     * Gets the number of names in the cache
+     * @return the approximate number of names
+     */
+    public long size() {
+        return ids.estimatedSize();
+    }
+}
@@ -0,0 +1,73 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Striped locks serializing the bookings of a same doctor
+ * A doctor name always maps to the same lock, so bookings for one doctor run one
+ * at a time while bookings for doctors on different stripes run in parallel.
+ */
+@Component
+@Profile("!reactive")
+public class DoctorLocks {
+
+    // The lock stripes, the number of stripes is a power of two
+    private final Lock[] stripes;
+
+    /**
+     * Constructor
+     * @param concurrency the minimum number of stripes
+     */
+    public DoctorLocks(@Value("${appointment.booking.lock-stripes:64}") int concurrency) {
+        int size = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        this.stripes = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Gets the lock of a doctor
+     * @param doctorName the doctor name
+     * @return the lock guarding the bookings of this doctor
+     */
+    public Lock lockFor(String doctorName) {
+        return stripes[stripe(doctorName)];
+    }
+
+    /**
+     * Gets the locks of several doctors
+     * Each lock is listed once and always in the same order, so taking them one after
+     * the other can't deadlock with another caller doing the same.
+     * @param doctorNames the doctor names
+     * @return the locks guarding the bookings of these doctors, in locking order
+     */
+    public List<Lock> locksFor(Collection<String> doctorNames) {
+        return doctorNames.stream()
+                .mapToInt(this::stripe)
+                .distinct()
+                .sorted()
+                .mapToObj(i -> stripes[i])
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the stripe of a doctor
+     * @param doctorName the doctor name
+     * @return the index of the lock of this doctor
+     */
+    private int stripe(String doctorName) {
+        int hash = Objects.hashCode(doctorName);
+        hash ^= (hash >>> 16);  // Spreads the high bits, like HashMap does
+        return hash & (stripes.length - 1);
+    }
+}
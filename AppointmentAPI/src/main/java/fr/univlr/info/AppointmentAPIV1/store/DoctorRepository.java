@@ -1,8 +1,95 @@
 package fr.univlr.info.AppointmentAPIV1.store;
 
 import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
 
 public interface DoctorRepository extends JpaRepository<Doctor,Long> {
     Doctor findByName(String name);
+
+    /**
+     * Finds the id of a doctor by its name, without loading the doctor
+     * @param name the doctor name
+     * @return the doctor id, or null if it doesn't exist
+     */
+    @Query("SELECT d.id FROM Doctor d WHERE d.name = :name")
+    Long findIdByName(@Param("name") String name);
+
+    /**
+     * Finds the version of a doctor and of its appointments, without loading them
+     * One aggregate over the appointments of the doctor, by the doctor index.
+     * @param id the doctor id
+     * @param now the current date, the appointments starting before it are counted as started
+     * @return the version, or null if the doctor doesn't exist
+     */
+    @Query("SELECT new fr.univlr.info.AppointmentAPIV1.store.ScheduleVersion(d.id, d.version, COUNT(a), SUM(a.id), SUM(a.version),"
+            + " SUM(CASE WHEN a.startDate < :now THEN 1 ELSE 0 END))"
+            + " FROM Doctor d LEFT JOIN d.appointments a WHERE d.id = :id GROUP BY d.id, d.version")
+    ScheduleVersion findScheduleVersionById(@Param("id") Long id, @Param("now") Date now);
+
+    /**
+     * Finds a doctor by its name, with its appointments in the same query
+     * @param name the doctor name
+     * @return the doctor, or null if it doesn't exist
+     */
+    @EntityGraph(attributePaths = "appointments")
+    Doctor findWithAppointmentsByName(String name);
+
+    /**
+     * Finds a doctor by its id, with its appointments in the same query
+     * @param id the doctor id
+     * @return the doctor
+     */
+    @EntityGraph(attributePaths = "appointments")
+    Optional<Doctor> findWithAppointmentsById(Long id);
+
+    /**
+     * Finds all doctors sorted by id, with their appointments in the same query
+     * @return a list of doctors
+     */
+    @EntityGraph(attributePaths = "appointments")
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("SELECT DISTINCT d FROM Doctor d ORDER BY d.id")
+    List<Doctor> findAllWithAppointments();
+
+    /**
+     * Finds the doctors with the given names
+     * @param names the doctor names
+     * @return the doctors found
+     */
+    List<Doctor> findByNameIn(Collection<String> names);
+
+    /**
+     * Finds a page of doctors with an id greater than the id parameter
+     * @param id the id of the last doctor of the previous page
+     * @param pageable the page size and sort order
+     * @return a page of doctors
+     */
+    Slice<Doctor> findByIdGreaterThan(Long id, Pageable pageable);
+
+    /**
+     * Deletes a doctor with one statement, without loading it nor its appointments
+     * Fails on the foreign key of the appointments if the doctor still has some.
+     * @param id the doctor id
+     * @return the number of doctors deleted, 0 if it doesn't exist anymore
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Doctor d WHERE d.id = :id")
+    int deleteByIdInBulk(@Param("id") Long id);
 }
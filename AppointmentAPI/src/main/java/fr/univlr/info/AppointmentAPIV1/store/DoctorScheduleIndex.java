@@ -0,0 +1,248 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.TimeWindow;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory index of the appointments of each doctor, sorted by start date
+ * Used to detect booking conflicts and to find free time windows without loading the doctor's appointments.
+ * The schedule of a doctor is loaded from the database on first use, then kept
+ * in sync by {@link AppointmentIndexListener}.
+ * No database call is made in a ConcurrentHashMap computation nor in a synchronized block, where a blocked
+ * virtual thread would pin its carrier thread: a schedule is put in the map empty, then loaded under its own lock.
+ */
+@Component
+@Profile("!reactive")
+public class DoctorScheduleIndex {
+
+    // The appointment repository, used to load a schedule on first use
+    private final AppointmentRepository apptRepository;
+    // The schedules, by doctor id
+    private final ConcurrentMap<Long, Schedule> schedules = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     * @param apptRepository the appointment repository
+     */
+    public DoctorScheduleIndex(@Lazy AppointmentRepository apptRepository) {
+        this.apptRepository = apptRepository;
+    }
+
+    /**
+     * Checks if a time slot overlaps an existing appointment of a doctor
+     * Two slots overlap if each one starts before the other one ends,
+     * so a slot enclosing an existing appointment is a conflict too.
+     * @param doctorId the doctor id
+     * @param start the start date of the slot
+     * @param end the end date of the slot
+     * @return true if the slot overlaps an existing appointment, false otherwise
+     */
+    public boolean overlaps(Long doctorId, Date start, Date end) {
+        return schedule(doctorId).overlaps(start.getTime(), end.getTime());
+    }
+
+    /**
+     * Finds the free time windows of a doctor between two dates
+     * One pass over the appointments of the doctor running between the two dates, in start date order.
+     * @param doctorId the doctor id
+     * @param from the start of the period
+     * @param to the end of the period
+     * @param minDuration the minimum duration of a free window, in milliseconds
+     * @return the free windows, sorted by start date
+     */
+    public List<TimeWindow> freeWindows(Long doctorId, Date from, Date to, long minDuration) {
+        return schedule(doctorId).freeWindows(from.getTime(), to.getTime(), minDuration);
+    }
+
+    /**
+     * Adds or moves an appointment in the schedule of its doctor
+     * Does nothing if the schedule has not been loaded yet, it will be read from the database.
+     * @param appt the appointment
+     */
+    public void put(Appointment appt) {
+        if (appt.getDoctorObj() == null || appt.getStartDate() == null || appt.getEndDate() == null) {
+            return;
+        }
+        Schedule schedule = schedules.get(appt.getDoctorObj().getId());
+        if (schedule != null) {
+            schedule.put(appt.getId(), appt.getStartDate().getTime(), appt.getEndDate().getTime());
+        }
+    }
+
+    /**
+     * Removes an appointment from the schedule of its doctor
+     * @param appt the appointment
+     */
+    public void remove(Appointment appt) {
+        if (appt.getDoctorObj() == null) {
+            return;
+        }
+        Schedule schedule = schedules.get(appt.getDoctorObj().getId());
+        if (schedule != null) {
+            schedule.remove(appt.getId());
+        }
+    }
+
+    /**
+     * Forgets the schedule of a doctor, read again from the database on next use
+     * Called once the appointments of the doctor have been changed by a bulk statement, which the listener doesn't see.
+     * @param doctorId the doctor id
+     */
+    public void evict(Long doctorId) {
+        schedules.remove(doctorId);
+    }
+
+    /**
+     * Forgets all the schedules, read again from the database on next use
+     */
+    public void evictAll() {
+        schedules.clear();
+    }
+
+    /**
+     * Gets the schedule of a doctor, loaded from the database on first use
+     * The changes made while the schedule is loading wait for its lock, then are applied on top of it.
+     * @param doctorId the doctor id
+     * @return the loaded schedule
+     */
+    private Schedule schedule(Long doctorId) {
+        Schedule schedule = schedules.computeIfAbsent(doctorId, id -> new Schedule());
+        if (!schedule.loaded) {
+            schedule.lock.lock();
+            try {
+                if (!schedule.loaded) {
+                    for (AppointmentSlot slot : apptRepository.findSlotsByDoctorId(doctorId)) {
+                        schedule.add(slot.getId(), slot.getStartDate().getTime(), slot.getEndDate().getTime());
+                    }
+                    schedule.loaded = true;
+                }
+            } finally {
+                schedule.lock.unlock();
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * The appointments of one doctor, sorted by start date then id
+     * Scanning backwards from the end of a new slot can stop as soon as an
+     * appointment starts more than the longest duration before the new slot,
+     * which keeps the lookup logarithmic even if some appointments overlap.
+     */
+    private static final class Schedule {
+        // Guards the schedule, a ReentrantLock parks a waiting virtual thread instead of pinning its carrier
+        private final Lock lock = new ReentrantLock();
+        private final NavigableSet<Slot> byStart = new TreeSet<>(
+                Comparator.comparingLong((Slot s) -> s.start).thenComparingLong(s -> s.id));
+        private final Map<Long, Slot> byId = new HashMap<>();
+        private long maxDuration = 0;
+        // Whether the appointments have been read from the database
+        private volatile boolean loaded = false;
+
+        boolean overlaps(long start, long end) {
+            lock.lock();
+            try {
+                Iterator<Slot> it = byStart.headSet(new Slot(Long.MIN_VALUE, end, end), false).descendingIterator();
+                while (it.hasNext()) {
+                    Slot slot = it.next();
+                    if (slot.start + maxDuration <= start) {
+                        return false;
+                    }
+                    if (slot.end > start) {
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<TimeWindow> freeWindows(long from, long to, long minDuration) {
+            lock.lock();
+            try {
+                List<TimeWindow> windows = new ArrayList<>();
+                long free = from;   // The start of the current free window
+                // The appointments starting up to the longest duration before the period may still be running at its start
+                for (Slot slot : byStart.subSet(new Slot(Long.MIN_VALUE, from - maxDuration, 0), true,
+                        new Slot(Long.MIN_VALUE, to, 0), false)) {
+                    if (slot.start - free >= minDuration) {
+                        windows.add(new TimeWindow(new Date(free), new Date(slot.start)));
+                    }
+                    free = Math.max(free, slot.end);
+                }
+                if (to - free >= minDuration) {
+                    windows.add(new TimeWindow(new Date(free), new Date(to)));
+                }
+                return windows;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(Long id, long start, long end) {
+            lock.lock();
+            try {
+                add(id, start, end);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(Long id) {
+            lock.lock();
+            try {
+                Slot old = byId.remove(id);
+                if (old != null) {
+                    byStart.remove(old);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Called with the lock held
+        void add(Long id, long start, long end) {
+            Slot old = byId.remove(id);
+            if (old != null) {
+                byStart.remove(old);
+            }
+            Slot slot = new Slot(id, start, end);
+            byId.put(id, slot);
+            byStart.add(slot);
+            maxDuration = Math.max(maxDuration, end - start);
+        }
+    }
+
+    /**
+     * A time slot, dates in epoch milliseconds
+     */
+    private static final class Slot {
+        private final long id;
+        private final long start;
+        private final long end;
+
+        Slot(long id, long start, long end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package fr.univlr.info.AppointmentAPIV1.store;
 
 import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.model.DoctorRow;
+import io.r2dbc.spi.ConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.hateoas.config.EnableHypermediaSupport;
 import org.springframework.hateoas.config.HypermediaRestTemplateConfigurer;
+import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
 import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Flux;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -30,6 +37,7 @@ class LoadDatabase {
     }
 
     @Bean
+    @Profile("!reactive")
     CommandLineRunner initDatabase(AppointmentRepository appointmentRepository,DoctorRepository docRepository) {
         return args -> {
             // V2 version : doctors mjones and jsmith must exist
@@ -49,6 +57,28 @@ class LoadDatabase {
         };
     }
 
+    /**
+     * Creates the tables of the reactive profile, which has no JPA to generate them
+     * @param connectionFactory the R2DBC connection factory
+     * @return the initializer, run when the connection factory is ready
+     */
+    @Bean
+    @Profile("reactive")
+    ConnectionFactoryInitializer initReactiveSchema(ConnectionFactory connectionFactory) {
+        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(connectionFactory);
+        initializer.setDatabasePopulator(new ResourceDatabasePopulator(new ClassPathResource("schema-r2dbc.sql")));
+        return initializer;
+    }
+
+    @Bean
+    @Profile("reactive")
+    CommandLineRunner initReactiveDatabase(ReactiveDoctorRepository docRepository) {
+        // The same doctors as the servlet stack, saved before the server accepts requests
+        return args -> docRepository.saveAll(Flux.just(new DoctorRow("mjones"), new DoctorRow("jsmith"), new DoctorRow("jdoe")))
+                .then().block();
+    }
+
     @Bean
     RestTemplate hypermediaRestTemplate(HypermediaRestTemplateConfigurer configurer) {
         return configurer.registerHypermediaTypes(new RestTemplate());
@@ -0,0 +1,115 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.AppointmentRow;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Reactive repository of the appointments, mirroring {@link AppointmentRepository} for the reactive profile
+ */
+public interface ReactiveAppointmentRepository extends R2dbcRepository<AppointmentRow, Long> {
+
+    /**
+     * Finds all appointments, sorted by id
+     * @return the appointments
+     */
+    @Query("SELECT * FROM appointment ORDER BY id")
+    Flux<AppointmentRow> findAllSorted();
+
+    /**
+     * Finds all appointments of a doctor, sorted by id
+     * @param doctorId the doctor id
+     * @return the appointments
+     */
+    @Query("SELECT * FROM appointment WHERE name = :doctorId ORDER BY id")
+    Flux<AppointmentRow> findByDoctorId(@Param("doctorId") Long doctorId);
+
+    /**
+     * Finds all appointments of several doctors, sorted by id
+     * @param doctorIds the doctor ids
+     * @return the appointments
+     */
+    @Query("SELECT * FROM appointment WHERE name IN (:doctorIds) ORDER BY id")
+    Flux<AppointmentRow> findByDoctorIdIn(@Param("doctorIds") Collection<Long> doctorIds);
+
+    /**
+     * Finds all appointments after the date parameter, sorted by id
+     * @param date the date
+     * @return the appointments
+     */
+    @Query("SELECT * FROM appointment WHERE start_date > :date ORDER BY id")
+    Flux<AppointmentRow> findByAfterDate(@Param("date") LocalDateTime date);
+
+    /**
+     * Finds a page of appointments with an id greater than the id parameter, sorted by id
+     * @param id the id of the last appointment of the previous page
+     * @param limit the maximum number of appointments
+     * @return the appointments
+     */
+    @Query("SELECT * FROM appointment WHERE id > :id ORDER BY id LIMIT :limit")
+    Flux<AppointmentRow> findByIdGreaterThan(@Param("id") long id, @Param("limit") int limit);
+
+    /**
+     * Finds a page of appointments after the date parameter, with an id greater than the id parameter, sorted by id
+     * @param date the date
+     * @param id the id of the last appointment of the previous page
+     * @param limit the maximum number of appointments
+     * @return the appointments
+     */
+    @Query("SELECT * FROM appointment WHERE start_date > :date AND id > :id ORDER BY id LIMIT :limit")
+    Flux<AppointmentRow> findByStartDateAfterAndIdGreaterThan(@Param("date") LocalDateTime date, @Param("id") long id, @Param("limit") int limit);
+
+    /**
+     * Checks if a time slot overlaps an appointment of a doctor
+     * Two slots overlap if each one starts before the other one ends.
+     * @param doctorId the doctor id
+     * @param start the start date of the slot
+     * @param end the end date of the slot
+     * @return true if the slot overlaps an appointment
+     */
+    @Query("SELECT COUNT(*) > 0 FROM appointment WHERE name = :doctorId AND start_date < :end AND end_date > :start")
+    Mono<Boolean> overlaps(@Param("doctorId") Long doctorId, @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    /**
+     * Checks if a doctor has appointments
+     * @param doctorId the doctor id
+     * @return true if the doctor has at least one appointment
+     */
+    @Query("SELECT COUNT(*) > 0 FROM appointment WHERE name = :doctorId")
+    Mono<Boolean> existsByDoctorId(@Param("doctorId") Long doctorId);
+
+    /**
+     * Deletes the appointments starting before a date, with one statement
+     * @param date the date
+     * @return the number of deleted appointments
+     */
+    @Modifying
+    @Query("DELETE FROM appointment WHERE start_date < :date")
+    Mono<Integer> deleteByStartDateBefore(@Param("date") LocalDateTime date);
+
+    /**
+     * Deletes all appointments of a doctor, with one statement
+     * @param doctorId the doctor id
+     * @return the number of deleted appointments
+     */
+    @Modifying
+    @Query("DELETE FROM appointment WHERE name = :doctorId")
+    Mono<Integer> deleteByDoctorId(@Param("doctorId") Long doctorId);
+
+    /**
+     * Deletes the appointments of a doctor starting before a date, with one statement
+     * @param doctorId the doctor id
+     * @param date the date
+     * @return the number of deleted appointments
+     */
+    @Modifying
+    @Query("DELETE FROM appointment WHERE name = :doctorId AND start_date < :date")
+    Mono<Integer> deleteByDoctorIdAndStartDateBefore(@Param("doctorId") Long doctorId, @Param("date") LocalDateTime date);
+}
@@ -0,0 +1,47 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.DoctorRow;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive repository of the doctors, mirroring {@link DoctorRepository} for the reactive profile
+ */
+public interface ReactiveDoctorRepository extends R2dbcRepository<DoctorRow, Long> {
+
+    /**
+     * Finds a doctor by its name
+     * @param name the doctor name
+     * @return the doctor, or nothing
+     */
+    Mono<DoctorRow> findByName(String name);
+
+    /**
+     * Finds a doctor by its name and locks its row until the end of the transaction
+     * Serializes the bookings of a same doctor, like the doctor locks of the servlet stack,
+     * across all the instances sharing the database.
+     * @param name the doctor name
+     * @return the doctor, or nothing
+     */
+    @Query("SELECT * FROM doctor WHERE name = :name FOR UPDATE")
+    Mono<DoctorRow> lockByName(@Param("name") String name);
+
+    /**
+     * Finds all doctors, sorted by id
+     * @return the doctors
+     */
+    @Query("SELECT * FROM doctor ORDER BY id")
+    Flux<DoctorRow> findAllSorted();
+
+    /**
+     * Finds a page of doctors with an id greater than the id parameter, sorted by id
+     * @param id the id of the last doctor of the previous page
+     * @param limit the maximum number of doctors
+     * @return the doctors
+     */
+    @Query("SELECT * FROM doctor WHERE id > :id ORDER BY id LIMIT :limit")
+    Flux<DoctorRow> findByIdGreaterThan(@Param("id") long id, @Param("limit") int limit);
+}
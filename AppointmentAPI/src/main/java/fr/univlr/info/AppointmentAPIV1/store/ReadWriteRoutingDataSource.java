@@ -0,0 +1,87 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Routes the read-only transactions to the replica and everything else to the primary
+ * Must be wrapped in a LazyConnectionDataSourceProxy: the read-only flag of a transaction is
+ * only set once the transaction manager has begun it, after it asked for a connection.
+ * A thread marked by {@link #stickToPrimary()} reads from the primary too, so a client
+ * that has just written reads its own writes before they reach the replica.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    /**
+     * The target databases
+     */
+    public enum Target { PRIMARY, REPLICA }
+
+    // Whether the current thread reads from the primary
+    private static final ThreadLocal<Boolean> STICKY = new ThreadLocal<>();
+
+    /**
+     * Constructor
+     * @param primary the primary database, for the writes
+     * @param replica the replica, for the read-only transactions
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Gets a target database
+     * @param target the target
+     * @return the database
+     */
+    public DataSource getTarget(Target target) {
+        return getResolvedDataSources().get(target);
+    }
+
+    /**
+     * Sends the read-only transactions of the current thread to the primary, until {@link #release()}
+     */
+    public static void stickToPrimary() {
+        STICKY.set(Boolean.TRUE);
+    }
+
+    /**
+     * Sends the read-only transactions of the current thread to the replica again
+     */
+    public static void release() {
+        STICKY.remove();
+    }
+
+    /**
+     * Gets the database of the current transaction
+     * @return the replica for a read-only transaction of a thread not sticking to the primary, the primary otherwise
+     */
+    public static Target currentTarget() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && STICKY.get() == null
+                ? Target.REPLICA : Target.PRIMARY;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return currentTarget();
+    }
+
+    /**
+     * Closes the connection pools of the targets
+     * @throws IOException if a pool fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        for (DataSource target : getResolvedDataSources().values()) {
+            if (target instanceof Closeable) {
+                ((Closeable) target).close();
+            }
+        }
+    }
+}
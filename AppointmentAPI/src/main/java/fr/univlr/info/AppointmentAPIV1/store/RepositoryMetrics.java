@@ -0,0 +1,115 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call of a repository method
+ * Adds an interceptor to each repository proxy, recording the "repository.invocations" timer
+ * tagged with the repository, the method and the exception thrown, if any. For the methods
+ * returning a stream, only the execution of the query is timed, not the reading of the stream.
+ * For the reactive repositories, the call is timed from the subscription to the completion.
+ */
+@Component
+public class RepositoryMetrics implements BeanPostProcessor {
+
+    // The registry of the metrics, looked up at the first call since post processors are created early
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    /**
+     * Constructor
+     * @param meterRegistry the registry of the metrics
+     */
+    public RepositoryMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Adds the interceptor to a repository, before the repository proxy is built
+     * @param bean the bean
+     * @param beanName the bean name
+     * @return the bean
+     */
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport) {
+            ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                    factory.addRepositoryProxyPostProcessor((proxyFactory, information) ->
+                            proxyFactory.addAdvice(new TimingInterceptor(information.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    /**
+     * Interceptor timing the calls of one repository
+     */
+    private class TimingInterceptor implements MethodInterceptor {
+        // The repository name
+        private final String repository;
+
+        /**
+         * Constructor
+         * @param repository the repository name
+         */
+        private TimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invocation.proceed();
+            } catch (Throwable t) {
+                record(invocation, t.getClass().getSimpleName(), start);
+                throw t;
+            }
+            if (result instanceof Mono) {
+                Mono<?> mono = (Mono<?>) result;
+                return Mono.defer(() -> {
+                    long subscribed = System.nanoTime();
+                    return mono.doOnSuccess(value -> record(invocation, "none", subscribed))
+                            .doOnError(t -> record(invocation, t.getClass().getSimpleName(), subscribed));
+                });
+            }
+            if (result instanceof Flux) {
+                Flux<?> flux = (Flux<?>) result;
+                return Flux.defer(() -> {
+                    long subscribed = System.nanoTime();
+                    return flux.doOnComplete(() -> record(invocation, "none", subscribed))
+                            .doOnError(t -> record(invocation, t.getClass().getSimpleName(), subscribed));
+                });
+            }
+            record(invocation, "none", start);
+            return result;
+        }
+
+        /**
+         * Records the duration of a call
+         * @param invocation the call
+         * @param exception the simple name of the exception thrown, or none
+         * @param start the start of the call, in nanoseconds
+         */
+        private void record(MethodInvocation invocation, String exception, long start) {
+            Timer.builder("repository.invocations")
+                    .description("Calls of the repository methods")
+                    .tag("repository", repository)
+                    .tag("method", invocation.getMethod().getName())
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry.getObject())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
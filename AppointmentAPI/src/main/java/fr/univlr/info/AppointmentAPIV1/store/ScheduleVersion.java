@@ -0,0 +1,92 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Representation;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Version of a doctor and of its appointments, giving the ETags of the doctor and of its appointments
+ * Computed either by an aggregate query, to answer a conditional request without loading anything,
+ * or from the appointments already loaded. Both give the same ETags for the same data.
+ * The sums of the ids and of the versions change when an appointment is added, removed or updated,
+ * even when the number of appointments doesn't change.
+ */
+public class ScheduleVersion {
+
+    // The doctor id
+    private final long doctorId;
+    // The doctor version
+    private final long doctorVersion;
+    // The number of appointments
+    private final long count;
+    // The sum of the appointment ids
+    private final long idSum;
+    // The sum of the appointment versions
+    private final long versionSum;
+    // The number of appointments already started, which can't be cancelled anymore
+    private final long started;
+
+    /**
+     * Constructor, used by the aggregate query of the repository
+     * @param doctorId the doctor id
+     * @param doctorVersion the doctor version
+     * @param count the number of appointments
+     * @param idSum the sum of the appointment ids, null if there is no appointment
+     * @param versionSum the sum of the appointment versions, null if there is no appointment
+     * @param started the number of appointments already started, null if there is no appointment
+     */
+    public ScheduleVersion(Long doctorId, Long doctorVersion, Long count, Long idSum, Long versionSum, Long started) {
+        this.doctorId = doctorId;
+        this.doctorVersion = doctorVersion;
+        this.count = count;
+        this.idSum = idSum == null ? 0 : idSum;
+        this.versionSum = versionSum == null ? 0 : versionSum;
+        this.started = started == null ? 0 : started;
+    }
+
+    /**
+     * Computes the version of appointments already loaded
+     * @param doctorId the doctor id
+     * @param doctorVersion the doctor version
+     * @param appts the appointments of the doctor
+     * @param now the current date, the appointments starting before it are counted as started
+     * @return the version
+     */
+    public static ScheduleVersion of(Long doctorId, long doctorVersion, Collection<Appointment> appts, Date now) {
+        long idSum = 0, versionSum = 0, started = 0;
+        for (Appointment appt : appts) {
+            idSum += appt.getId();
+            versionSum += appt.getVersion();
+            if (appt.getStartDate().before(now)) {
+                started++;
+            }
+        }
+        return new ScheduleVersion(doctorId, doctorVersion, (long) appts.size(), idSum, versionSum, started);
+    }
+
+    /**
+     * Gets the ETag of the doctor, with its appointments
+     * @param representation the representation of the response
+     * @return the strong ETag
+     */
+    public String doctorETag(Representation representation) {
+        return "\"doctor-" + doctorId + "-" + doctorVersion + "-" + appointmentsTag() + representation.getETagSuffix() + "\"";
+    }
+
+    /**
+     * Gets the ETag of the appointments of the doctor
+     * The HAL representation depends on the started appointments, which have no cancel link.
+     * @param representation the representation of the response
+     * @return the strong ETag
+     */
+    public String appointmentsETag(Representation representation) {
+        String suffix = representation.isHal() ? "-hal-" + started : representation.getETagSuffix();
+        return "\"appointments-" + doctorId + "-" + appointmentsTag() + suffix + "\"";
+    }
+
+    private String appointmentsTag() {
+        return count + "-" + idSum + "-" + versionSum;
+    }
+}
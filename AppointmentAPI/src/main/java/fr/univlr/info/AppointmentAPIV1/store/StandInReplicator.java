@@ -0,0 +1,151 @@
+package fr.univlr.info.AppointmentAPIV1.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stand-in for the replication of the primary H2 database to the replica, for local runs and tests
+ * Copies the schema and the rows once the application is started, then every appointment.datasource.replica.lag
+ * copies all the rows of all the tables, read in one snapshot of the primary and written in one
+ * transaction of the replica, so the readers of the replica see either the previous copy or the new one. The replica lags
+ * behind the primary like an asynchronous replica would. Not meant for large databases: a real
+ * replica is kept in sync by the database itself, with appointment.datasource.replica.stand-in=false.
+ */
+public class StandInReplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(StandInReplicator.class);
+    // The number of rows inserted by one JDBC batch
+    private static final int BATCH_SIZE = 500;
+
+    // The primary database
+    private final DataSource primary;
+    // The replica
+    private final DataSource replica;
+    // Serializes the copies
+    private final Lock lock = new ReentrantLock();
+    // The tables, copied with the schema
+    private List<String> tables;
+
+    /**
+     * Constructor
+     * @param primary the primary database
+     * @param replica the replica
+     */
+    public StandInReplicator(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    /**
+     * Fills the replica with the schema and the initial rows of the primary
+     * @throws SQLException if a database fails
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() throws SQLException {
+        replicate();
+    }
+
+    /**
+     * Copies the rows of the primary to the replica, and the schema the first time
+     * @throws SQLException if a database fails
+     */
+    @Scheduled(initialDelayString = "${appointment.datasource.replica.lag:PT1S}",
+            fixedDelayString = "${appointment.datasource.replica.lag:PT1S}")
+    public void replicate() throws SQLException {
+        lock.lock();
+        try (Connection from = primary.getConnection(); Connection to = replica.getConnection()) {
+            if (tables == null) {
+                tables = copySchema(from, to);
+            }
+            from.setReadOnly(true);
+            from.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);   // One snapshot of all the tables
+            from.setAutoCommit(false);
+            to.setAutoCommit(false);
+            try {
+                for (String table : tables) {
+                    copyRows(table, from, to);
+                }
+                to.commit();
+            } catch (SQLException e) {
+                to.rollback();
+                throw e;
+            } finally {
+                from.rollback();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates the tables, sequences and indexes of the primary in the replica
+     * The replica is only written by the copies, which don't keep the rows in foreign key order.
+     * @param from the connection to the primary
+     * @param to the connection to the replica
+     * @return the names of the tables
+     * @throws SQLException if a database fails
+     */
+    private static List<String> copySchema(Connection from, Connection to) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (Statement read = from.createStatement(); Statement write = to.createStatement()) {
+            try (ResultSet script = read.executeQuery("SCRIPT NODATA")) {
+                while (script.next()) {
+                    write.execute(script.getString(1));
+                }
+            }
+            write.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            try (ResultSet rs = from.getMetaData().getTables(null, "PUBLIC", "%", new String[]{"TABLE"})) {
+                while (rs.next()) {
+                    tables.add(rs.getString("TABLE_NAME"));
+                }
+            }
+        }
+        log.info("Replica schema created, tables {}", tables);
+        return Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * Replaces the rows of a table of the replica by the ones of the primary
+     * @param table the table name
+     * @param from the connection to the primary
+     * @param to the connection to the replica
+     * @throws SQLException if a database fails
+     */
+    private static void copyRows(String table, Connection from, Connection to) throws SQLException {
+        try (Statement delete = to.createStatement()) {
+            delete.executeUpdate("DELETE FROM " + table);
+        }
+        try (Statement read = from.createStatement(); ResultSet rows = read.executeQuery("SELECT * FROM " + table)) {
+            int columns = rows.getMetaData().getColumnCount();
+            String insert = "INSERT INTO " + table + " VALUES (" + String.join(", ", Collections.nCopies(columns, "?")) + ")";
+            try (PreparedStatement write = to.prepareStatement(insert)) {
+                int batched = 0;
+                while (rows.next()) {
+                    for (int i = 1; i <= columns; i++) {
+                        write.setObject(i, rows.getObject(i));
+                    }
+                    write.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        write.executeBatch();
+                    }
+                }
+                write.executeBatch();
+            }
+        }
+    }
+}
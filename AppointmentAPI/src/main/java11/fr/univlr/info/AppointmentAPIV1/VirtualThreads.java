@@ -0,0 +1,23 @@
+package fr.univlr.info.AppointmentAPIV1;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The virtual threads of a build before Java 21 (java11 profile): there are none
+ * The application has to be built with a JDK 21 or newer, which selects the java21 profile.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Refuses to create an executor of virtual threads
+     * @return never
+     * @throws IllegalStateException always
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        throw new IllegalStateException("appointment.virtual-threads.enabled needs the application built with Java 21"
+                + " or newer, it was built for Java 11");
+    }
+}
@@ -0,0 +1,21 @@
+package fr.univlr.info.AppointmentAPIV1;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The virtual threads of a Java 21 build (java21 profile, activated by a JDK 21 or newer)
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task
+     * @return the executor
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -0,0 +1,22 @@
+-- Schema of the reactive profile, the same tables and indexes as the ones generated by Hibernate
+-- Ids are generated by the database, R2DBC has no pooled id generator
+CREATE TABLE IF NOT EXISTS doctor (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(255),
+    version BIGINT NOT NULL,
+    CONSTRAINT uk_doctor_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS appointment (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    doctor VARCHAR(255),
+    start_date TIMESTAMP,
+    end_date TIMESTAMP,
+    patient VARCHAR(255),
+    version BIGINT NOT NULL,
+    name BIGINT,
+    CONSTRAINT fk_appointment_doctor FOREIGN KEY (name) REFERENCES doctor (id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_appointment_doctor_start ON appointment (name, start_date);
+CREATE INDEX IF NOT EXISTS idx_appointment_start ON appointment (start_date);
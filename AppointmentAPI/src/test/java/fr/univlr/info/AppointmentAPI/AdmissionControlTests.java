@@ -0,0 +1,146 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.controller.AdaptiveConcurrencyLimiter;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the rate limits by client and of the adaptive limit of the requests in flight
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.datasource.name=admission",
+                "appointment.admission.enabled=true",
+                "appointment.admission.client-header=X-Client",
+                "appointment.admission.write.rate=0.01",
+                "appointment.admission.write.burst=2"})
+@DirtiesContext
+public class AdmissionControlTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ResponseEntity<Appointment> post(String client, long start) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Client", client);
+        Appointment appt = new Appointment("admission", new Date(start), new Date(start + HOUR), client);
+        return restTemplate.postForEntity("http://localhost:" + port + "/api/appointments",
+                new HttpEntity<>(appt, headers), Appointment.class);
+    }
+
+    @Test
+    public void testWritesAreRateLimitedByClient() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long base = calendar.getTimeInMillis();
+
+        // The burst of the client, then a fast 429
+        assertEquals(HttpStatus.CREATED, post("client1", base).getStatusCode());
+        assertEquals(HttpStatus.CREATED, post("client1", base + HOUR).getStatusCode());
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () -> post("client1", base + 2 * HOUR));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatusCode());
+        assertTrue(Long.parseLong(e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER)) >= 1);
+
+        // Neither the other clients nor the reads are limited
+        assertEquals(HttpStatus.CREATED, post("client2", base + 2 * HOUR).getStatusCode());
+        Appointment[] appts = restTemplate.getForObject("http://localhost:" + port + "/api/doctors/admission/appointments",
+                Appointment[].class);
+        assertEquals(3, appts.length);
+        assertEquals(1.0, meterRegistry.get("appointment.admission.rejections")
+                .tag("operation", "write").tag("reason", "rate").counter().count());
+    }
+
+    @Test
+    public void testConcurrencyLimitFollowsTheLatency() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 100);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(4, limiter.getInFlight());
+        for (int i = 0; i < 4; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        // Fast requests, the limit is used: it grows
+        for (int round = 0; round < 50; round++) {
+            saturate(limiter, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 4 && grown <= 100, "limit " + grown);
+
+        // The requests slow down: it shrinks
+        saturate(limiter, TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.getLimit() < grown, "limit " + limiter.getLimit() + " after " + grown);
+        assertTrue(limiter.getLimit() >= 1);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testConcurrencyLimitStaysDownDuringASlowdown() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(200, 1, 200);
+        for (int round = 0; round < 20; round++) {
+            saturate(limiter, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(200, limiter.getLimit());
+
+        // A streamed export ends without a latency sample, whatever its duration
+        assertTrue(limiter.tryAcquire());
+        limiter.release();
+        assertEquals(200, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+
+        // The database is a hundred times slower for several thousands of requests: the limit drops and stays down
+        int samples = 0, highest = 0;
+        for (int round = 0; samples < 5000; round++) {
+            samples += saturate(limiter, TimeUnit.MILLISECONDS.toNanos(100));
+            if (round >= 10) {
+                highest = Math.max(highest, limiter.getLimit());
+            }
+        }
+        assertTrue(highest <= 20, "limit back to " + highest);
+
+        // Fast again: it grows back
+        for (int round = 0; round < 200; round++) {
+            saturate(limiter, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertTrue(limiter.getLimit() > highest, "limit " + limiter.getLimit());
+    }
+
+    private static int saturate(AdaptiveConcurrencyLimiter limiter, long latency) {
+        int admitted = 0;
+        while (limiter.tryAcquire()) {
+            admitted++;
+        }
+        for (int i = 0; i < admitted; i++) {
+            limiter.release(latency);
+        }
+        return admitted;
+    }
+}
@@ -0,0 +1,112 @@
+package fr.univlr.info.AppointmentAPI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentArchiver;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorScheduleIndex;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the archival of the appointments and of the includeArchived=true reads
+ * The appointments can't be booked in the past, so they are archived with a date in the future.
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.datasource.name=archive", "appointment.archive.enabled=true", "appointment.archive.batch-size=2"})
+@DirtiesContext
+public class AppointmentArchiveTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private AppointmentArchiver archiver;
+
+    @Autowired
+    private DoctorScheduleIndex scheduleIndex;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    @Test
+    public void testArchivedAppointmentsAreOnlyReadOnRequest() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long base = calendar.getTimeInMillis();
+        Appointment old = restTemplate.postForObject(url("/appointments"),
+                new Appointment("archivist", new Date(base), new Date(base + HOUR), "old"), Appointment.class);
+        Appointment recent = restTemplate.postForObject(url("/appointments"),
+                new Appointment("archivist", new Date(base + 10 * HOUR), new Date(base + 11 * HOUR), "recent"), Appointment.class);
+        Long doctorId = restTemplate.getForObject(url("/doctors/archivist"), JsonNode.class).get("id").asLong();
+        assertTrue(scheduleIndex.overlaps(doctorId, new Date(base), new Date(base + HOUR)));
+
+        // Every appointment ended before the recent one is archived, by batches of 2
+        int archived = archiver.archive(new Date(base + 2 * HOUR));
+        assertTrue(archived >= 1);
+        assertEquals(0, archiver.archive(new Date(base + 2 * HOUR)));
+
+        // The hot set doesn't have the archived appointment anymore, and neither do the conflict checks
+        assertFalse(scheduleIndex.overlaps(doctorId, new Date(base), new Date(base + HOUR)));
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () ->
+                restTemplate.getForEntity(url("/appointments/" + old.getId()), Appointment.class));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        JsonNode hot = restTemplate.getForObject(url("/doctors/archivist/appointments"), JsonNode.class);
+        assertEquals(1, hot.size());
+        assertEquals(recent.getId().longValue(), hot.get(0).get("id").asLong());
+        assertFalse(hot.get(0).has("archived"));
+
+        // includeArchived=true reads the archive too
+        JsonNode appt = restTemplate.getForObject(url("/appointments/" + old.getId() + "?includeArchived=true"), JsonNode.class);
+        assertEquals("old", appt.get("patient").asText());
+        assertTrue(appt.get("archived").asBoolean());
+        JsonNode all = restTemplate.getForObject(url("/doctors/archivist/appointments?includeArchived=true"), JsonNode.class);
+        assertEquals(2, all.size());
+        assertEquals(old.getId().longValue(), all.get(0).get("id").asLong());
+        assertEquals(recent.getId().longValue(), all.get(1).get("id").asLong());
+        JsonNode everything = restTemplate.getForObject(url("/appointments?includeArchived=true"), JsonNode.class);
+        assertEquals(archived + restTemplate.getForObject(url("/appointments"), JsonNode.class).size(), everything.size());
+
+        // The archived appointment links to its archive URI and can't be cancelled
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, MediaTypes.HAL_JSON_VALUE);
+        JsonNode hal = restTemplate.exchange(url("/appointments/" + old.getId() + "?includeArchived=true"), HttpMethod.GET,
+                new HttpEntity<>(headers), JsonNode.class).getBody();
+        assertTrue(hal.get("_links").get("self").get("href").asText().endsWith("/appointments/" + old.getId() + "?includeArchived=true"));
+        assertFalse(hal.get("_links").has("cancel"));
+
+        // The pages merge both tables, and the next link keeps the parameter
+        ResponseEntity<JsonNode> page = restTemplate.getForEntity(url("/appointments?includeArchived=true&limit=1&after=" + (old.getId() - 1)), JsonNode.class);
+        assertEquals(old.getId().longValue(), page.getBody().get(0).get("id").asLong());
+        assertTrue(page.getHeaders().getFirst(HttpHeaders.LINK).contains("includeArchived=true"));
+
+        // The doctor can't be deleted while the archive refers to it
+        restTemplate.delete(url("/appointments/" + recent.getId()));
+        e = assertThrows(HttpStatusCodeException.class, () -> restTemplate.delete(url("/doctors/archivist")));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        assertEquals(1, restTemplate.getForObject(url("/doctors/archivist/appointments?includeArchived=true"), JsonNode.class).size());
+    }
+}
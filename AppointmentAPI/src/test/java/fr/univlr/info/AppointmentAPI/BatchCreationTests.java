@@ -0,0 +1,109 @@
+package fr.univlr.info.AppointmentAPI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of POST /api/appointments/batch
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=batch")
+@DirtiesContext
+public class BatchCreationTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    private static Appointment appt(String doctor, long start, String patient) {
+        return new Appointment(doctor, new Date(start), new Date(start + HOUR), patient);
+    }
+
+    private long nextYear() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void testResultOfEachAppointment() {
+        long base = nextYear();
+        restTemplate.postForObject(url("/appointments"), appt("batch1", base, "stored"), Appointment.class);
+
+        List<Appointment> batch = Arrays.asList(
+                appt("batch1", base + 2 * HOUR, "first"),                                    // created
+                appt("batch1", base + 2 * HOUR + HOUR / 2, "overlaps the first"),          // conflict in the batch
+                appt("batch1", base, "overlaps the stored one"),                            // conflict with the database
+                new Appointment("batch1", new Date(base + 5 * HOUR), new Date(base + 4 * HOUR), "ends before it starts"),
+                null,                                                                       // missing
+                appt("batch2", base, "new doctor"));                                        // created, with its doctor
+        JsonNode results = restTemplate.postForObject(url("/appointments/batch"), batch, JsonNode.class);
+        assertEquals(batch.size(), results.size());
+        int[] statuses = {201, 409, 409, 406, 406, 201};
+        for (int i = 0; i < statuses.length; i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+            assertEquals(statuses[i], results.get(i).get("status").asInt(), "item " + i);
+        }
+        assertEquals("first", results.get(0).get("appointment").get("patient").asText());
+        assertTrue(results.get(0).get("appointment").get("id").isNumber());
+
+        assertEquals(2, restTemplate.getForObject(url("/doctors/batch1/appointments"), Appointment[].class).length);
+        assertEquals(1, restTemplate.getForObject(url("/doctors/batch2/appointments"), Appointment[].class).length);
+    }
+
+    @Test
+    public void testTooManyAppointments() {
+        List<Appointment> batch = new ArrayList<>(Collections.nCopies(10001, (Appointment) null));
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class,
+                () -> restTemplate.postForObject(url("/appointments/batch"), batch, JsonNode.class));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatusCode());
+    }
+
+    @Test
+    public void testFailedInsertLeavesNoDoctor() {
+        long base = nextYear() + 48 * HOUR;
+        char[] tooLong = new char[300];
+        Arrays.fill(tooLong, 'p');
+        List<Appointment> batch = Arrays.asList(appt("batch3", base, "patient"), appt("batch4", base, new String(tooLong)));
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class,
+                () -> restTemplate.postForObject(url("/appointments/batch"), batch, JsonNode.class));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+
+        // The doctors were inserted in the same transaction as the appointments
+        for (String doctor : new String[]{"batch3", "batch4"}) {
+            e = assertThrows(HttpStatusCodeException.class, () -> restTemplate.getForObject(url("/doctors/" + doctor), Doctor.class));
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        }
+        // Nor cached: the batch can be sent again without the faulty appointment
+        JsonNode results = restTemplate.postForObject(url("/appointments/batch"), batch.subList(0, 1), JsonNode.class);
+        assertEquals(201, results.get(0).get("status").asInt());
+    }
+}
@@ -0,0 +1,111 @@
+package fr.univlr.info.AppointmentAPI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Representation;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads and writes appointments as CBOR and Smile, and checks the negotiation of the representations
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=binary")
+@DirtiesContext
+public class BinaryFormatTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    private ResponseEntity<byte[]> exchange(HttpMethod method, String path, String accept, MediaType contentType, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, accept);
+        if (contentType != null) {
+            headers.setContentType(contentType);
+        }
+        return restTemplate.exchange(url(path), method, new HttpEntity<>(body, headers), byte[].class);
+    }
+
+    @Test
+    public void testCborAndSmileRoundTrips() throws Exception {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long start = calendar.getTimeInMillis();
+        ObjectMapper[] mappers = {Jackson2ObjectMapperBuilder.cbor().build(), Jackson2ObjectMapperBuilder.smile().build()};
+        MediaType[] types = {MediaType.APPLICATION_CBOR, Representation.APPLICATION_SMILE};
+        for (int i = 0; i < types.length; i++) {
+            ObjectMapper mapper = mappers[i];
+            MediaType type = types[i];
+            Appointment appt = new Appointment("binary", new Date(start + 2 * i * HOUR), new Date(start + (2 * i + 1) * HOUR), "patient " + type);
+
+            // Created from a binary body, answered in the same format
+            ResponseEntity<byte[]> created = exchange(HttpMethod.POST, "/appointments", type.toString(), type, mapper.writeValueAsBytes(appt));
+            assertEquals(HttpStatus.CREATED, created.getStatusCode());
+            assertTrue(type.isCompatibleWith(created.getHeaders().getContentType()));
+            Appointment saved = mapper.readValue(created.getBody(), Appointment.class);
+            assertEquals(appt.getPatient(), saved.getPatient());
+            assertEquals(appt.getStartDate(), saved.getStartDate());
+
+            // Same content as the JSON list
+            ResponseEntity<byte[]> list = exchange(HttpMethod.GET, "/doctors/binary/appointments", type.toString(), null, null);
+            assertTrue(type.isCompatibleWith(list.getHeaders().getContentType()));
+            JsonNode binary = mapper.readTree(list.getBody());
+            JsonNode json = new ObjectMapper().readTree(exchange(HttpMethod.GET, "/doctors/binary/appointments",
+                    MediaType.APPLICATION_JSON_VALUE, null, null).getBody());
+            assertEquals(json, binary);
+
+            // Each representation has its own ETag
+            String path = "/appointments/" + saved.getId();
+            String binaryETag = exchange(HttpMethod.GET, path, type.toString(), null, null).getHeaders().getETag();
+            String jsonETag = exchange(HttpMethod.GET, path, MediaType.APPLICATION_JSON_VALUE, null, null).getHeaders().getETag();
+            assertNotNull(binaryETag);
+            assertNotEquals(jsonETag, binaryETag);
+        }
+    }
+
+    @Test
+    public void testNegotiationFollowsTheQualityValues() throws Exception {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 2);
+        long start = calendar.getTimeInMillis();
+        restTemplate.postForObject(url("/appointments"),
+                new Appointment("quality", new Date(start), new Date(start + HOUR), "patient"), Appointment.class);
+        ObjectMapper json = new ObjectMapper();
+
+        JsonNode plain = json.readTree(exchange(HttpMethod.GET, "/doctors/quality",
+                "application/hal+json;q=0.5, application/json", null, null).getBody());
+        assertFalse(plain.has("_links"));
+        JsonNode hal = json.readTree(exchange(HttpMethod.GET, "/doctors/quality",
+                "application/json;q=0.5, " + MediaTypes.HAL_JSON_VALUE, null, null).getBody());
+        assertTrue(hal.has("_links"));
+    }
+}
@@ -0,0 +1,167 @@
+package fr.univlr.info.AppointmentAPI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the asynchronous bookings: POST /api/appointments answers 202 and the
+ * bookings are processed by the booking queue
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"appointment.booking-queue.enabled=true", "appointment.booking-queue.batch-size=8"})
+@DirtiesContext
+public class BookingQueueTests {
+    private static final long MINUTE = 60_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private long base() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private URI book(String doctor, long start, long end) {
+        ResponseEntity<JsonNode> response = restTemplate.postForEntity("http://localhost:" + port + "/api/appointments",
+                new Appointment(doctor, new Date(start), new Date(end), "patient"), JsonNode.class);
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("PENDING", response.getBody().get("status").asText());
+        assertNotNull(response.getHeaders().getLocation());
+        return response.getHeaders().getLocation();
+    }
+
+    /**
+     * Polls the status of a booking until it has been processed
+     * @param ticket the URI of the ticket
+     * @return the processed ticket
+     */
+    private ResponseEntity<JsonNode> await(URI ticket) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            ResponseEntity<JsonNode> response = restTemplate.getForEntity(ticket, JsonNode.class);
+            if (!"PENDING".equals(response.getBody().get("status").asText())) {
+                return response;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Booking still pending: " + ticket);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testBookingsAreProcessedInOrder() throws Exception {
+        long base = base();
+        URI first = book("queued", base, base + 30 * MINUTE);
+        URI overlapping = book("queued", base + 15 * MINUTE, base + 45 * MINUTE);
+        URI other = book("queued-other", base + 15 * MINUTE, base + 45 * MINUTE);
+
+        ResponseEntity<JsonNode> created = await(first);
+        assertEquals("CREATED", created.getBody().get("status").asText());
+        assertEquals(201, created.getBody().get("httpStatus").asInt());
+        Appointment appt = restTemplate.getForObject(created.getHeaders().getLocation(), Appointment.class);
+        assertEquals(created.getBody().get("appointment").get("id").asLong(), appt.getId());
+        assertEquals("queued", appt.getDoctor());
+
+        ResponseEntity<JsonNode> rejected = await(overlapping);
+        assertEquals("REJECTED", rejected.getBody().get("status").asText());
+        assertEquals(409, rejected.getBody().get("httpStatus").asInt());
+        assertNull(rejected.getHeaders().getLocation());
+
+        assertEquals("CREATED", await(other).getBody().get("status").asText());
+    }
+
+    @Test
+    public void testConcurrentBookingsForOneDoctor() throws Exception {
+        String doctorName = "queued-stress";
+        long base = base();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<URI>> tickets = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // 30 minutes slots starting every 10 minutes, so most of them overlap
+            long start = base + (i % 60) * 10 * MINUTE;
+            tickets.add(executor.submit(() -> book(doctorName, start, start + 30 * MINUTE)));
+        }
+        int created = 0;
+        for (Future<URI> ticket : tickets) {
+            if ("CREATED".equals(await(ticket.get()).getBody().get("status").asText())) {
+                created++;
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // every accepted booking is stored and none of them overlap
+        Appointment[] appts = restTemplate.getForObject("http://localhost:" + port +
+                "/api/doctors/" + doctorName + "/appointments", Appointment[].class);
+        assertNotNull(appts);
+        assertEquals(created, appts.length);
+        Arrays.sort(appts, Comparator.comparing(Appointment::getStartDate));
+        for (int i = 1; i < appts.length; i++) {
+            assertFalse(appts[i].getStartDate().before(appts[i - 1].getEndDate()),
+                    "Overlapping appointments: " + appts[i - 1] + " and " + appts[i]);
+        }
+    }
+
+    @Test
+    public void testDrainedQueuesAreRemoved() throws Exception {
+        long base = base() + 48 * 60 * MINUTE;
+        List<URI> tickets = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tickets.add(book("queued-doctor-" + i, base, base + 30 * MINUTE));
+        }
+        for (URI ticket : tickets) {
+            assertEquals("CREATED", await(ticket).getBody().get("status").asText());
+        }
+
+        // Each queue is removed by its worker right after its last batch
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (meterRegistry.get("appointment.booking.queue.doctors").gauge().value() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Queues of idle doctors kept");
+            Thread.sleep(20);
+        }
+        assertEquals(0.0, meterRegistry.get("appointment.booking.queue.size").gauge().value());
+
+        // A doctor booked again gets a new queue
+        assertEquals("CREATED", await(book("queued-doctor-0", base + 60 * MINUTE, base + 90 * MINUTE)).getBody().get("status").asText());
+    }
+
+    @Test
+    public void testUnknownTicket() {
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () ->
+                restTemplate.getForEntity("http://localhost:" + port + "/api/bookings/unknown", JsonNode.class));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+}
@@ -0,0 +1,108 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the bulk deletions of appointments and of the doctor deletion guard
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=bulk")
+@DirtiesContext
+public class BulkDeleteTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    // Not on the reactive profile, which has no JPA
+    @Autowired(required = false)
+    private EntityManagerFactory entityManagerFactory;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    private Appointment book(String doctor, long start, String patient) {
+        return restTemplate.postForObject(url("/appointments"),
+                new Appointment(doctor, new Date(start), new Date(start + HOUR), patient), Appointment.class);
+    }
+
+    @Test
+    public void testDeleteARangeOfAppointments() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long base = calendar.getTimeInMillis();
+        book("bulk1", base, "early");
+        Appointment late = book("bulk1", base + 10 * HOUR, "late");
+        Appointment other = book("bulk2", base, "other");
+        String before = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm").format(new Date(base + 5 * HOUR));
+
+        // Only the early appointment of bulk1 is deleted
+        restTemplate.delete(url("/appointments?doctor=bulk1&before=" + before));
+        Appointment[] appts = restTemplate.getForObject(url("/doctors/bulk1/appointments"), Appointment[].class);
+        assertEquals(1, appts.length);
+        assertEquals(late.getId(), appts[0].getId());
+        assertEquals(other.getId(), restTemplate.getForObject(url("/appointments/" + other.getId()), Appointment.class).getId());
+
+        // The freed slot can be booked again, the schedule of the doctor has been read again
+        assertNotNull(book("bulk1", base, "again"));
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () -> book("bulk1", base, "conflict"));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+
+        e = assertThrows(HttpStatusCodeException.class, () -> restTemplate.delete(url("/appointments?doctor=nobody")));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        e = assertThrows(HttpStatusCodeException.class, () -> restTemplate.delete(url("/appointments?before=tomorrow")));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+
+        // All the appointments of bulk2, then the doctor itself, deleted without loading anything
+        restTemplate.delete(url("/appointments?doctor=bulk2"));
+        if (entityManagerFactory != null) {
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            restTemplate.delete(url("/doctors/bulk2"));
+            assertEquals(0, statistics.getEntityLoadCount());
+            assertEquals(0, statistics.getCollectionLoadCount());
+        } else {
+            restTemplate.delete(url("/doctors/bulk2"));
+        }
+        e = assertThrows(HttpStatusCodeException.class, () -> restTemplate.getForObject(url("/doctors/bulk2"), Doctor.class));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+
+    @Test
+    public void testDoctorWithAppointmentsIsNotDeleted() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 2);
+        book("bulk3", calendar.getTimeInMillis(), "patient");
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () -> restTemplate.delete(url("/doctors/bulk3")));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+
+        restTemplate.delete(url("/appointments"));
+        assertEquals(0, restTemplate.getForObject(url("/appointments"), Appointment[].class).length);
+        restTemplate.delete(url("/doctors/bulk3"));
+    }
+}
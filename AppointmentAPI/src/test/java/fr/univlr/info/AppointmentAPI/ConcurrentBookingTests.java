@@ -0,0 +1,107 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test of the booking path: many threads book overlapping slots of a same doctor
+ * Runs in its own application context, so the database of {@link AppointmentApiTests} is untouched.
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "appointment.booking.lock-stripes=16")
+@DirtiesContext
+public class ConcurrentBookingTests {
+    private static final int THREADS = 8;
+    private static final int BOOKINGS_PER_THREAD = 40;
+    private static final long MINUTE = 60_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Test
+    public void testConcurrentBookingsForOneDoctor() throws Exception {
+        // a doctor that doesn't exist yet, so the threads also race to create it
+        String doctorName = "stress";
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long base = calendar.getTimeInMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            results.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                int created = 0;
+                start.await();
+                for (int i = 0; i < BOOKINGS_PER_THREAD; i++) {
+                    // 30 minutes slots starting every 10 minutes, so most of them overlap
+                    long startDate = base + random.nextInt(60) * 10 * MINUTE;
+                    Appointment appt = new Appointment(doctorName,
+                            new Date(startDate), new Date(startDate + 30 * MINUTE), "patient" + seed + "-" + i);
+                    try {
+                        restTemplate.postForEntity("http://localhost:" + port + "/api/appointments",
+                                appt, Appointment.class);
+                        created++;
+                    } catch (HttpStatusCodeException e) {
+                        assertSame(e.getStatusCode(), HttpStatus.CONFLICT);
+                    }
+                }
+                return created;
+            }));
+        }
+        start.countDown();
+        int created = 0;
+        for (Future<Integer> result : results) {
+            created += result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // the doctor has been created only once
+        Doctor[] doctors = restTemplate.getForObject("http://localhost:" + port + "/api/doctors", Doctor[].class);
+        assertNotNull(doctors);
+        assertEquals(1, Arrays.stream(doctors).filter(d -> doctorName.equals(d.getName())).count());
+
+        // every accepted booking is stored and none of them overlap
+        Appointment[] appts = restTemplate.getForObject("http://localhost:" + port +
+                "/api/doctors/" + doctorName + "/appointments", Appointment[].class);
+        assertNotNull(appts);
+        assertEquals(created, appts.length);
+        Arrays.sort(appts, Comparator.comparing(Appointment::getStartDate));
+        for (int i = 1; i < appts.length; i++) {
+            assertFalse(appts[i].getStartDate().before(appts[i - 1].getEndDate()),
+                    "Overlapping appointments: " + appts[i - 1] + " and " + appts[i]);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the ETags and the conditional GETs of the appointments and of the doctors
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=conditional")
+@DirtiesContext
+public class ConditionalGetTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    private ResponseEntity<String> get(String path, String accept, String eTag) {
+        HttpHeaders headers = new HttpHeaders();
+        if (accept != null) {
+            headers.set(HttpHeaders.ACCEPT, accept);
+        }
+        if (eTag != null) {
+            headers.setIfNoneMatch(eTag);
+        }
+        try {
+            return restTemplate.exchange(url(path), HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        } catch (HttpStatusCodeException e) {
+            return new ResponseEntity<>(e.getStatusCode());
+        }
+    }
+
+    private Appointment post(String doctor, int hoursFromNow) {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        calendar.add(Calendar.HOUR, hoursFromNow);
+        Date start = calendar.getTime();
+        calendar.add(Calendar.HOUR, 1);
+        return restTemplate.postForObject(url("/appointments"), new Appointment(doctor, start, calendar.getTime(), "patient"), Appointment.class);
+    }
+
+    @Test
+    public void testAppointmentETag() {
+        Appointment appt = post("etag1", 0);
+        ResponseEntity<String> first = get("/appointments/" + appt.getId(), null, null);
+        String eTag = first.getHeaders().getETag();
+        assertNotNull(eTag);
+        assertFalse(eTag.startsWith("W/"));
+        assertEquals(HttpStatus.NOT_MODIFIED, get("/appointments/" + appt.getId(), null, eTag).getStatusCode());
+        // The HAL representation has another ETag
+        String halETag = get("/appointments/" + appt.getId(), MediaTypes.HAL_JSON_VALUE, null).getHeaders().getETag();
+        assertNotEquals(eTag, halETag);
+        assertEquals(HttpStatus.NOT_MODIFIED, get("/appointments/" + appt.getId(), MediaTypes.HAL_JSON_VALUE, halETag).getStatusCode());
+
+        // An update changes the ETag
+        appt.setPatient("another patient");
+        restTemplate.put(url("/appointments/" + appt.getId()), appt);
+        ResponseEntity<String> updated = get("/appointments/" + appt.getId(), null, eTag);
+        assertEquals(HttpStatus.OK, updated.getStatusCode());
+        assertNotEquals(eTag, updated.getHeaders().getETag());
+    }
+
+    @Test
+    public void testDoctorETags() {
+        post("etag2", 0);
+        for (String path : new String[]{"/doctors/etag2", "/doctors/etag2/appointments"}) {
+            String eTag = get(path, null, null).getHeaders().getETag();
+            assertNotNull(eTag, path);
+
+            // A conditional request of a doctor known to the cache costs one aggregate query
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics.clear();
+            assertEquals(HttpStatus.NOT_MODIFIED, get(path, null, eTag).getStatusCode(), path);
+            assertEquals(1, statistics.getPrepareStatementCount(), path);
+            assertEquals(0, statistics.getEntityLoadCount(), path);
+        }
+
+        String doctorETag = get("/doctors/etag2", null, null).getHeaders().getETag();
+        String apptsETag = get("/doctors/etag2/appointments", null, null).getHeaders().getETag();
+        Appointment second = post("etag2", 2);
+        // A new appointment changes both ETags
+        assertEquals(HttpStatus.OK, get("/doctors/etag2", null, doctorETag).getStatusCode());
+        assertEquals(HttpStatus.OK, get("/doctors/etag2/appointments", null, apptsETag).getStatusCode());
+        String afterPost = get("/doctors/etag2/appointments", null, null).getHeaders().getETag();
+
+        // Removing it gives back the first ETag, but not the one after the booking
+        restTemplate.delete(url("/appointments/" + second.getId()));
+        assertEquals(HttpStatus.NOT_MODIFIED, get("/doctors/etag2/appointments", null, apptsETag).getStatusCode());
+        assertEquals(HttpStatus.OK, get("/doctors/etag2/appointments", null, afterPost).getStatusCode());
+    }
+
+    @Test
+    public void testDeletedDoctorNotModified() {
+        post("etag3", 0);
+        String eTag = get("/doctors/etag3/appointments", null, null).getHeaders().getETag();
+        Appointment[] appts = restTemplate.getForObject(url("/doctors/etag3/appointments"), Appointment[].class);
+        restTemplate.delete(url("/appointments/" + appts[0].getId()));
+        restTemplate.delete(url("/doctors/etag3"));
+        assertEquals(HttpStatus.NOT_FOUND, get("/doctors/etag3/appointments", null, eTag).getStatusCode());
+    }
+}
@@ -0,0 +1,158 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorCache;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the cache of the doctor ids, by doctor name
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=doctorcache")
+@DirtiesContext
+public class DoctorCacheTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private DoctorCache doctorCache;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    private Appointment book(String doctor, long start) {
+        return restTemplate.postForObject(url("/appointments"),
+                new Appointment(doctor, new Date(start), new Date(start + HOUR), "patient"), Appointment.class);
+    }
+
+    private long nextYear() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private String availability(String doctor, long from) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm");
+        return url("/doctors/" + doctor + "/availability?from=" + format.format(new Date(from))
+                + "&to=" + format.format(new Date(from + 24 * HOUR)) + "&duration=PT30M");
+    }
+
+    @Test
+    public void testHitIsAPrimaryKeyLookup() {
+        book("cache1", nextYear());
+        long hits = doctorCache.stats().hitCount();
+        assertEquals("cache1", restTemplate.getForObject(url("/doctors/cache1"), Doctor.class).getName());
+        assertEquals(hits + 1, doctorCache.stats().hitCount());
+
+        // Loaded by its primary key: no query by name
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        assertEquals("cache1", doctorCache.findByName("cache1").getName());
+        assertEquals(0, statistics.getQueryExecutionCount());
+        assertEquals(1, statistics.getEntityLoadCount());
+
+        // The counters are served with the size of the cache
+        Map<?, ?> stats = restTemplate.getForObject(url("/cache/doctors"), Map.class);
+        assertTrue(((Number) stats.get("size")).longValue() >= 1);
+        assertEquals(doctorCache.stats().hitCount(), ((Number) stats.get("hitCount")).longValue());
+        assertEquals(doctorCache.stats().missCount(), ((Number) stats.get("missCount")).longValue());
+        assertTrue(stats.containsKey("hitRate"));
+        assertTrue(stats.containsKey("evictionCount"));
+    }
+
+    @Test
+    public void testDeleteInvalidatesTheName() {
+        long start = nextYear() + 48 * HOUR;
+        Appointment appt = book("cache2", start);
+        Long firstId = doctorCache.findIdByName("cache2");
+        assertNotNull(firstId);
+        restTemplate.delete(url("/appointments/" + appt.getId()));
+        restTemplate.delete(url("/doctors/cache2"));
+        assertNull(doctorCache.findIdByName("cache2"));
+
+        // Created again with another id, which is the one cached
+        book("cache2", start);
+        Long secondId = doctorCache.findIdByName("cache2");
+        assertNotNull(secondId);
+        assertNotEquals(firstId, secondId);
+    }
+
+    @Test
+    public void testStaleIdIsLookedUpAgain() {
+        long start = nextYear() + 96 * HOUR;
+        book("cache3", start);
+        Long staleId = doctorCache.findIdByName("cache3");
+
+        // Deleted then created again behind the cache, like by another instance
+        restTemplate.delete(url("/appointments?doctor=cache3"));
+        doctorRepository.deleteByIdInBulk(staleId);
+        Long newId = doctorRepository.save(new Doctor("cache3")).getId();
+        assertEquals(staleId, doctorCache.findIdByName("cache3"));
+
+        // Every endpoint finds the doctor by its new id instead of answering 404
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity(availability("cache3", start), Object.class).getStatusCode());
+        assertEquals(newId, doctorCache.findIdByName("cache3"));
+        doctorRepository.deleteByIdInBulk(newId);
+        Long thirdId = doctorRepository.save(new Doctor("cache3")).getId();
+        assertEquals(0, restTemplate.getForObject(url("/doctors/cache3/appointments"), Appointment[].class).length);
+        assertEquals(thirdId, doctorCache.findIdByName("cache3"));
+
+        // Deleted behind the cache again: not found, not a free day
+        doctorRepository.deleteByIdInBulk(thirdId);
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class,
+                () -> restTemplate.getForEntity(availability("cache3", start), Object.class));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        assertNull(doctorCache.findIdByName("cache3"));
+    }
+
+    @Test
+    public void testRolledBackDoctorIsNotCached() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            doctorCache.put(doctorRepository.save(new Doctor("cache4")));
+            status.setRollbackOnly();
+        });
+        assertNull(doctorCache.findIdByName("cache4"));
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class,
+                () -> restTemplate.getForObject(url("/doctors/cache4"), Doctor.class));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+}
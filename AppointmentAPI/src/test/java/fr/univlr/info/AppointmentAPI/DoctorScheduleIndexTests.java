@@ -0,0 +1,99 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.model.TimeWindow;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentRepository;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentSlot;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorScheduleIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DoctorScheduleIndexTests {
+
+    private static final long HOUR = 3600_000L;
+
+    private DoctorScheduleIndex index;
+    private Doctor doctor;
+
+    private static AppointmentSlot slot(long id, long start, long end) {
+        return new AppointmentSlot() {
+            public Long getId() { return id; }
+            public Date getStartDate() { return new Date(start); }
+            public Date getEndDate() { return new Date(end); }
+        };
+    }
+
+    private Appointment appointment(long id, long start, long end) {
+        Appointment appt = new Appointment(doctor.getName(), new Date(start), new Date(end), "patient");
+        appt.setId(id);
+        appt.setDoctorObj(doctor);
+        return appt;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        doctor = new Doctor("mjones");
+        doctor.setId(1L);
+        AppointmentRepository repository = mock(AppointmentRepository.class);
+        // existing appointment from 10:00 to 11:00
+        when(repository.findSlotsByDoctorId(1L))
+                .thenReturn(Collections.singletonList(slot(10L, 10 * HOUR, 11 * HOUR)));
+        index = new DoctorScheduleIndex(repository);
+    }
+
+    @Test
+    public void testOverlaps() {
+        assertTrue(index.overlaps(1L, new Date(10 * HOUR), new Date(11 * HOUR)));    // same slot
+        assertTrue(index.overlaps(1L, new Date(9 * HOUR), new Date(10 * HOUR + 1))); // overlaps the start
+        assertTrue(index.overlaps(1L, new Date(11 * HOUR - 1), new Date(12 * HOUR))); // overlaps the end
+        assertTrue(index.overlaps(1L, new Date(10 * HOUR + 1), new Date(11 * HOUR - 1))); // inside
+        assertTrue(index.overlaps(1L, new Date(9 * HOUR), new Date(12 * HOUR)));    // encloses
+        assertFalse(index.overlaps(1L, new Date(9 * HOUR), new Date(10 * HOUR)));   // ends when it starts
+        assertFalse(index.overlaps(1L, new Date(11 * HOUR), new Date(12 * HOUR)));  // starts when it ends
+        assertFalse(index.overlaps(2L, new Date(10 * HOUR), new Date(11 * HOUR)));  // another doctor
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        index.overlaps(1L, new Date(0), new Date(1)); // loads the schedule
+        // a long appointment, then a short one starting after the end of the long one
+        index.put(appointment(11L, 12 * HOUR, 20 * HOUR));
+        index.put(appointment(12L, 21 * HOUR, 22 * HOUR));
+        assertTrue(index.overlaps(1L, new Date(19 * HOUR), new Date(19 * HOUR + 1)));
+        // moving the long appointment frees its slot
+        index.put(appointment(11L, 12 * HOUR, 13 * HOUR));
+        assertFalse(index.overlaps(1L, new Date(19 * HOUR), new Date(19 * HOUR + 1)));
+        index.remove(appointment(10L, 10 * HOUR, 11 * HOUR));
+        assertFalse(index.overlaps(1L, new Date(10 * HOUR), new Date(11 * HOUR)));
+        assertTrue(index.overlaps(1L, new Date(21 * HOUR), new Date(23 * HOUR)));
+    }
+
+    @Test
+    public void testFreeWindows() {
+        index.overlaps(1L, new Date(0), new Date(1)); // loads the schedule
+        // a long appointment running at the start of the period, overlapping appointments, then a short gap
+        index.put(appointment(11L, 0, 9 * HOUR));
+        index.put(appointment(12L, 12 * HOUR, 14 * HOUR));
+        index.put(appointment(13L, 13 * HOUR, 15 * HOUR));
+        index.put(appointment(14L, 15 * HOUR + HOUR / 4, 16 * HOUR));
+        List<TimeWindow> windows = index.freeWindows(1L, new Date(8 * HOUR), new Date(18 * HOUR), HOUR / 2);
+        assertEquals(3, windows.size());
+        assertEquals(9 * HOUR, windows.get(0).getStart().getTime());    // after the long appointment
+        assertEquals(10 * HOUR, windows.get(0).getEnd().getTime());
+        assertEquals(11 * HOUR, windows.get(1).getStart().getTime());
+        assertEquals(12 * HOUR, windows.get(1).getEnd().getTime());
+        assertEquals(16 * HOUR, windows.get(2).getStart().getTime());   // the 15 minutes gap is too short
+        assertEquals(18 * HOUR, windows.get(2).getEnd().getTime());
+        // fully booked period, and a doctor without appointments
+        assertTrue(index.freeWindows(1L, new Date(12 * HOUR), new Date(15 * HOUR), 1).isEmpty());
+        assertEquals(1, index.freeWindows(2L, new Date(0), new Date(HOUR), HOUR).size());
+    }
+}
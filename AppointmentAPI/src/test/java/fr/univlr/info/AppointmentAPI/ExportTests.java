@@ -0,0 +1,152 @@
+package fr.univlr.info.AppointmentAPI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.store.AppointmentExporter;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the newline delimited JSON export of GET /api/appointments
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.datasource.name=export", "spring.jpa.properties.hibernate.generate_statistics=true"})
+@DirtiesContext
+public class ExportTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AppointmentExporter exporter;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    private ResponseEntity<String> export(String query) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(MediaType.parseMediaTypes(MediaType.APPLICATION_NDJSON_VALUE));
+        return restTemplate.exchange(url("/appointments" + query), HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+
+    /**
+     * Reads the ids of an export, checking that each line is one JSON object
+     * @param body the exported appointments
+     * @return the ids
+     */
+    private Set<Long> ids(String body) throws Exception {
+        Set<Long> ids = new TreeSet<>();
+        assertTrue(body.endsWith("\n"));
+        for (String line : body.split("\n")) {
+            JsonNode appt = objectMapper.readTree(line);
+            assertTrue(appt.isObject(), line);
+            assertTrue(ids.add(appt.get("id").asLong()), line);
+        }
+        return ids;
+    }
+
+    private Set<Long> ids(Appointment[] appts) {
+        Set<Long> ids = new TreeSet<>();
+        for (Appointment appt : appts) {
+            ids.add(appt.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testOneAppointmentPerLine() throws Exception {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long base = calendar.getTimeInMillis();
+        Appointment[] appts = new Appointment[3];
+        for (int i = 0; i < appts.length; i++) {
+            long start = base + 2 * i * HOUR;
+            appts[i] = restTemplate.postForObject(url("/appointments"),
+                    new Appointment("exporter", new Date(start), new Date(start + HOUR), "patient" + i), Appointment.class);
+        }
+
+        ResponseEntity<String> all = export("");
+        assertTrue(MediaType.APPLICATION_NDJSON.isCompatibleWith(all.getHeaders().getContentType()));
+        assertEquals(ids(restTemplate.getForObject(url("/appointments"), Appointment[].class)), ids(all.getBody()));
+        for (Appointment appt : appts) {
+            assertTrue(all.getBody().contains("\"patient\":\"" + appt.getPatient() + "\""));
+        }
+
+        // Only the appointments starting after the date
+        String date = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date(base + HOUR));
+        Set<Long> after = ids(export("?date=" + date).getBody());
+        assertEquals(ids(restTemplate.getForObject(url("/appointments?date=" + date), Appointment[].class)), after);
+        assertFalse(after.contains(appts[0].getId()));
+        assertTrue(after.contains(appts[1].getId()));
+        assertTrue(after.contains(appts[2].getId()));
+    }
+
+    @Test
+    public void testExportedAppointmentsAreDetached() {
+        restTemplate.postForObject(url("/appointments"), new Appointment("exporter-detach",
+                new Date(System.currentTimeMillis() + 400 * 24 * HOUR), new Date(System.currentTimeMillis() + 401 * 24 * HOUR),
+                "patient"), Appointment.class);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            statistics.clear();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                exporter.export(null, out);
+            } catch (Exception e) {
+                fail(e);
+            }
+            long lines = new String(out.toByteArray(), StandardCharsets.UTF_8).chars().filter(c -> c == '\n').count();
+            assertTrue(lines >= 1);
+            // Every appointment has been loaded once, and none of them is left in the persistence context
+            assertEquals(lines, statistics.getEntityLoadCount());
+            assertEquals(0, entityManager.unwrap(Session.class).getStatistics().getEntityCount());
+        });
+    }
+}
@@ -0,0 +1,201 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.controller.IdempotencyStore;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorLocks;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the retries of POST /api/appointments with an Idempotency-Key header
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.datasource.name=idempotency", "appointment.idempotency.wait=2s"})
+@DirtiesContext
+public class IdempotencyTests {
+    private static final long HOUR = 3600_000L;
+    private static final int THREADS = 8;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private DoctorLocks doctorLocks;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    private ResponseEntity<Appointment> post(Appointment appt, String key) {
+        return post(appt, key, null);
+    }
+
+    private ResponseEntity<Appointment> post(Appointment appt, String key, String authorization) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(IdempotencyStore.IDEMPOTENCY_KEY, key);
+        if (authorization != null) {
+            headers.set(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        return restTemplate.postForEntity(url("/appointments"), new HttpEntity<>(appt, headers), Appointment.class);
+    }
+
+    private long nextYear() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void testRetriesAreReplayed() {
+        long start = nextYear();
+        Appointment appt = new Appointment("idem1", new Date(start), new Date(start + HOUR), "patient");
+
+        ResponseEntity<Appointment> first = post(appt, "retry-1");
+        assertEquals(HttpStatus.CREATED, first.getStatusCode());
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED));
+
+        // The retry gets the same appointment instead of a conflict
+        ResponseEntity<Appointment> retry = post(appt, "retry-1");
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED));
+        assertEquals(first.getBody().getId(), retry.getBody().getId());
+        assertEquals(first.getHeaders().getLocation(), retry.getHeaders().getLocation());
+        assertEquals(1, restTemplate.getForObject(url("/doctors/idem1/appointments"), Appointment[].class).length);
+
+        // Without the key, or with another one, the same booking is a conflict
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class,
+                () -> restTemplate.postForEntity(url("/appointments"), appt, Appointment.class));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        e = assertThrows(HttpStatusCodeException.class, () -> post(appt, "retry-2"));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        // The conflict is replayed too
+        e = assertThrows(HttpStatusCodeException.class, () -> post(appt, "retry-2"));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        assertEquals("true", e.getResponseHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED));
+
+        // A key can't be reused by another booking
+        Appointment other = new Appointment("idem1", new Date(start + 2 * HOUR), new Date(start + 3 * HOUR), "patient");
+        e = assertThrows(HttpStatusCodeException.class, () -> post(other, "retry-1"));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getStatusCode());
+        assertEquals(1, restTemplate.getForObject(url("/doctors/idem1/appointments"), Appointment[].class).length);
+    }
+
+    @Test
+    public void testConcurrentRetriesBookOnce() throws Exception {
+        long start = nextYear() + 10 * HOUR;
+        Appointment appt = new Appointment("idem2", new Date(start), new Date(start + HOUR), "patient");
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<ResponseEntity<Appointment>>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            results.add(executor.submit(() -> {
+                ready.await();
+                return post(appt, "concurrent");
+            }));
+        }
+        ready.countDown();
+        int replayed = 0;
+        Long id = null;
+        for (Future<ResponseEntity<Appointment>> result : results) {
+            // Every request succeeds with the same appointment, none of them gets a conflict
+            ResponseEntity<Appointment> response = result.get();
+            assertEquals(HttpStatus.CREATED, response.getStatusCode());
+            if (id == null) {
+                id = response.getBody().getId();
+            }
+            assertEquals(id, response.getBody().getId());
+            if (response.getHeaders().containsKey(IdempotencyStore.IDEMPOTENT_REPLAYED)) {
+                replayed++;
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(THREADS - 1, replayed);
+        assertEquals(1, restTemplate.getForObject(url("/doctors/idem2/appointments"), Appointment[].class).length);
+    }
+
+    @Test
+    public void testKeysAreScopedByClient() {
+        long start = nextYear() + 20 * HOUR;
+        Appointment appt = new Appointment("idem3", new Date(start), new Date(start + HOUR), "patient");
+        assertEquals(HttpStatus.CREATED, post(appt, "scoped", "Bearer alice").getStatusCode());
+
+        // The same key and booking from another client runs, and conflicts, instead of getting the first response
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () -> post(appt, "scoped", "Bearer bob"));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        assertNull(e.getResponseHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED));
+        e = assertThrows(HttpStatusCodeException.class, () -> post(appt, "scoped"));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        assertNull(e.getResponseHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED));
+
+        // The first client still gets its response
+        ResponseEntity<Appointment> retry = post(appt, "scoped", "Bearer alice");
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED));
+    }
+
+    @Test
+    public void testRetryDoesNotWaitForAStalledRequest() throws Exception {
+        long start = nextYear() + 30 * HOUR;
+        Appointment appt = new Appointment("idem4", new Date(start), new Date(start + HOUR), "patient");
+        ReentrantLock lock = (ReentrantLock) doctorLocks.lockFor("idem4");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<ResponseEntity<Appointment>> first;
+        lock.lock();
+        try {
+            // The first request holds the key and stalls on the lock of the doctor
+            first = executor.submit(() -> post(appt, "stalled"));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!lock.hasQueuedThreads()) {
+                assertTrue(System.currentTimeMillis() < deadline, "First request not started");
+                Thread.sleep(10);
+            }
+
+            // The retry gives up after the wait instead of holding its thread
+            long retryStart = System.nanoTime();
+            HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () -> post(appt, "stalled"));
+            assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+            assertEquals("1", e.getResponseHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - retryStart) < 5);
+        } finally {
+            lock.unlock();
+        }
+
+        // Once the first request is done, the retry gets its response
+        ResponseEntity<Appointment> created = first.get(10, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.CREATED, created.getStatusCode());
+        ResponseEntity<Appointment> retry = post(appt, "stalled");
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.IDEMPOTENT_REPLAYED));
+        assertEquals(created.getBody().getId(), retry.getBody().getId());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,338 @@
+package fr.univlr.info.AppointmentAPI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load test: concurrent mixed traffic against the appointment and doctor endpoints
+ * Seeds doctors and appointments, then drives GET/POST/DELETE requests from several threads
+ * and reports the throughput and the p50/p99/p999 latencies of each endpoint. Fails when a
+ * server error is returned or when a latency or the throughput is out of its budget.
+ * Tagged "load": excluded from the default build, run with: mvn -P load-test test
+ * The settings are the load.* properties below, e.g. -Dload.threads=32 -Dload.budget.p99-ms=100
+ * -Dload.budget.getAppointment.p50-ms=10
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=load")
+@DirtiesContext
+@Tag("load")
+public class LoadTests {
+    private static final long HOUR = 3600_000L;
+    // The default latency budgets, in milliseconds: a loose guard against regressions, meant to be tightened
+    private static final Map<String, Double> DEFAULT_BUDGETS = new HashMap<>();
+    static {
+        DEFAULT_BUDGETS.put("p50", 250.0);
+        DEFAULT_BUDGETS.put("p99", 1000.0);
+        DEFAULT_BUDGETS.put("p999", 2000.0);
+        DEFAULT_BUDGETS.put("listAppointments.p50", 1000.0);    // Serializes all the appointments
+    }
+
+    @LocalServerPort
+    private int port;
+
+    // The number of seeded doctors
+    @Value("${load.doctors:20}")
+    private int doctors;
+    // The number of seeded appointments
+    @Value("${load.appointments:2000}")
+    private int appointments;
+    // The number of concurrent clients
+    @Value("${load.threads:8}")
+    private int threads;
+    // The warm up duration, not measured
+    @Value("${load.warmup-seconds:5}")
+    private int warmupSeconds;
+    // The measured duration
+    @Value("${load.duration-seconds:20}")
+    private int durationSeconds;
+    // The weight of each endpoint in the traffic
+    @Value("${load.mix:getAppointment=30,listAppointments=1,pageAppointments=15,getDoctor=15,doctorAppointments=10,postAppointment=20,deleteAppointment=5}")
+    private String mix;
+    // The minimum throughput of the whole traffic, in requests per second
+    @Value("${load.budget.min-throughput:50}")
+    private double minThroughput;
+
+    // The environment, holding the latency budgets
+    @Autowired
+    private Environment environment;
+
+    // The client, returning the error statuses instead of throwing them
+    private RestTemplate client;
+    // The ids of the existing appointments
+    private final List<Long> ids = new CopyOnWriteArrayList<>();
+    // The ids of the appointments created by the load, deleted first
+    private final ConcurrentLinkedQueue<Long> created = new ConcurrentLinkedQueue<>();
+    // The start of the free slots of the doctors, the bookings go after the seeded appointments
+    private final AtomicLong nextSlot = new AtomicLong();
+    private long base;
+
+    @BeforeEach
+    public void setUp() {
+        client = new RestTemplateBuilder()
+                .rootUri("http://localhost:" + port + "/api")
+                .errorHandler(new DefaultResponseErrorHandler() {
+                    @Override
+                    public boolean hasError(ClientHttpResponse response) {
+                        return false;
+                    }
+                })
+                .build();
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        base = calendar.getTimeInMillis();
+        seed();
+    }
+
+    /**
+     * Seeds the appointments with the batch endpoint, one hour slots per doctor
+     */
+    private void seed() {
+        List<Appointment> batch = new ArrayList<>();
+        for (int i = 0; i < appointments; i++) {
+            long start = base + (i / doctors) * HOUR;
+            batch.add(new Appointment(doctor(i), new Date(start), new Date(start + HOUR), "patient" + i));
+            if (batch.size() == 1000 || i == appointments - 1) {
+                JsonNode results = client.postForObject("/appointments/batch", batch, JsonNode.class);
+                for (JsonNode result : results) {
+                    assertEquals(201, result.get("status").asInt(), result.toString());
+                    ids.add(result.get("appointment").get("id").asLong());
+                }
+                batch.clear();
+            }
+        }
+        nextSlot.set(appointments / doctors + 1);
+    }
+
+    private String doctor(int i) {
+        return "doctor" + (i % doctors);
+    }
+
+    @Test
+    public void testMixedLoad() throws Exception {
+        Map<String, Integer> weights = weights();
+        run(weights, warmupSeconds, new ConcurrentHashMap<>());  // Warm up, not measured
+        Map<String, Stats> stats = new ConcurrentHashMap<>();
+        long elapsed = run(weights, durationSeconds, stats);
+
+        long total = stats.values().stream().mapToLong(Stats::count).sum();
+        double throughput = total * 1e9 / elapsed;
+        System.out.printf("%nLoad test: %d threads, %d doctors, %d appointments, %d s%n",
+                threads, doctors, appointments, durationSeconds);
+        System.out.printf("%-20s %8s %9s %9s %9s %9s  %s%n", "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p999 ms", "statuses");
+        List<String> failures = new ArrayList<>();
+        for (String endpoint : weights.keySet()) {
+            Stats s = stats.get(endpoint);
+            if (s == null) {
+                continue;
+            }
+            double[] latencies = s.percentiles(0.50, 0.99, 0.999);
+            System.out.printf("%-20s %8d %9.1f %9.2f %9.2f %9.2f  %s%n", endpoint, s.count(),
+                    s.count() * 1e9 / elapsed, latencies[0], latencies[1], latencies[2], s.statuses);
+            check(failures, endpoint, "p50", latencies[0]);
+            check(failures, endpoint, "p99", latencies[1]);
+            check(failures, endpoint, "p999", latencies[2]);
+            s.statuses.keySet().stream().filter(status -> status >= 500)
+                    .forEach(status -> failures.add(endpoint + " returned " + status));
+        }
+        System.out.printf("%-20s %8d %9.1f%n%n", "total", total, throughput);
+        if (throughput < minThroughput) {
+            failures.add(String.format("throughput %.1f req/s < %.1f req/s", throughput, minThroughput));
+        }
+        assertTrue(failures.isEmpty(), String.join(", ", failures));
+    }
+
+    /**
+     * Checks a latency against its budget
+     * The budget of an endpoint is load.budget.<endpoint>.<percentile>-ms, or load.budget.<percentile>-ms
+     * for all the endpoints, or else its default one.
+     * @param failures the budgets exceeded
+     * @param endpoint the endpoint
+     * @param percentile the percentile: p50, p99 or p999
+     * @param latency the latency, in milliseconds
+     */
+    private void check(List<String> failures, String endpoint, String percentile, double latency) {
+        Double defaultBudget = DEFAULT_BUDGETS.getOrDefault(endpoint + "." + percentile, DEFAULT_BUDGETS.get(percentile));
+        double budget = environment.getProperty("load.budget." + endpoint + "." + percentile + "-ms", Double.class,
+                environment.getProperty("load.budget." + percentile + "-ms", Double.class, defaultBudget));
+        if (latency > budget) {
+            failures.add(String.format("%s %s %.2f ms > %.2f ms", endpoint, percentile, latency, budget));
+        }
+    }
+
+    /**
+     * Parses the traffic mix
+     * @return the weight of each endpoint, in the order of the mix
+     */
+    private Map<String, Integer> weights() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights.put(parts[0], Integer.parseInt(parts[1]));
+        }
+        return weights;
+    }
+
+    /**
+     * Sends the traffic from all the threads
+     * @param weights the weight of each endpoint
+     * @param seconds the duration
+     * @param stats the statistics of each endpoint
+     * @return the elapsed time, in nanoseconds
+     */
+    private long run(Map<String, Integer> weights, int seconds, Map<String, Stats> stats) throws Exception {
+        String[] endpoints = weights.keySet().toArray(new String[0]);
+        int[] cumulated = new int[endpoints.length];
+        int sum = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            sum += weights.get(endpoints[i]);
+            cumulated[i] = sum;
+        }
+        final int totalWeight = sum;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    int draw = random.nextInt(totalWeight);
+                    int i = 0;
+                    while (cumulated[i] <= draw) {
+                        i++;
+                    }
+                    long before = System.nanoTime();
+                    int status = send(endpoints[i], random);
+                    long latency = System.nanoTime() - before;
+                    stats.computeIfAbsent(endpoints[i], e -> new Stats()).record(latency, status);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    /**
+     * Sends one request
+     * @param endpoint the endpoint
+     * @param random the random generator of the thread
+     * @return the response status
+     */
+    private int send(String endpoint, ThreadLocalRandom random) {
+        ResponseEntity<String> response;
+        switch (endpoint) {
+            case "getAppointment":
+                response = client.getForEntity("/appointments/" + ids.get(random.nextInt(ids.size())), String.class);
+                break;
+            case "listAppointments":
+                response = client.getForEntity("/appointments", String.class);
+                break;
+            case "pageAppointments":
+                response = client.getForEntity("/appointments?limit=100&after=" + ids.get(random.nextInt(ids.size())), String.class);
+                break;
+            case "getDoctor":
+                response = client.getForEntity("/doctors/" + doctor(random.nextInt(doctors)), String.class);
+                break;
+            case "doctorAppointments":
+                response = client.getForEntity("/doctors/" + doctor(random.nextInt(doctors)) + "/appointments", String.class);
+                break;
+            case "postAppointment":
+                long start = base + nextSlot.getAndIncrement() * HOUR;
+                Appointment appt = new Appointment(doctor(random.nextInt(doctors)), new Date(start), new Date(start + HOUR), "load");
+                ResponseEntity<Appointment> posted = client.postForEntity("/appointments", appt, Appointment.class);
+                if (posted.getStatusCodeValue() == 201) {
+                    created.add(posted.getBody().getId());
+                }
+                return posted.getStatusCodeValue();
+            case "deleteAppointment":
+                Long id = created.poll();
+                if (id == null) {
+                    id = ids.get(random.nextInt(ids.size()));   // May be deleted already, 404
+                }
+                response = client.exchange("/appointments/" + id, HttpMethod.DELETE, null, String.class);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown endpoint " + endpoint + " in load.mix");
+        }
+        return response.getStatusCodeValue();
+    }
+
+    /**
+     * Latencies and statuses of one endpoint
+     */
+    private static class Stats {
+        // The latencies, in nanoseconds
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        // The number of responses, by status
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(long latency, int status) {
+            latencies.add(latency);
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+
+        long count() {
+            return latencies.size();
+        }
+
+        /**
+         * Computes latency percentiles, by the nearest rank method
+         * @param percentiles the percentiles, between 0 and 1
+         * @return the latencies, in milliseconds
+         */
+        double[] percentiles(double... percentiles) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            double[] result = new double[percentiles.length];
+            for (int i = 0; i < percentiles.length; i++) {
+                int rank = (int) Math.ceil(percentiles[i] * sorted.length);
+                result[i] = sorted[Math.max(0, rank - 1)] / 1e6;
+            }
+            return result;
+        }
+    }
+}
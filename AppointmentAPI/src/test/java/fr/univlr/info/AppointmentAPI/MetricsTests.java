@@ -0,0 +1,70 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the metrics exposed in Prometheus format
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=metrics")
+@AutoConfigureMetrics
+@DirtiesContext
+public class MetricsTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    private HttpStatus post(Appointment appt) {
+        try {
+            return restTemplate.postForEntity("http://localhost:" + port + "/api/appointments", appt, Appointment.class)
+                    .getStatusCode();
+        } catch (HttpStatusCodeException e) {
+            return e.getStatusCode();
+        }
+    }
+
+    private static void assertMetric(String scrape, String regex) {
+        assertTrue(Pattern.compile(regex, Pattern.MULTILINE).matcher(scrape).find(), regex);
+    }
+
+    @Test
+    public void testPrometheusScrape() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        Date start = calendar.getTime();
+        calendar.add(Calendar.HOUR, 1);
+        Date end = calendar.getTime();
+        assertEquals(HttpStatus.CREATED, post(new Appointment("metrics", start, end, "patient1")));
+        assertEquals(HttpStatus.CONFLICT, post(new Appointment("metrics", start, end, "patient2")));
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, post(new Appointment("metrics", end, start, "patient3")));
+
+        String scrape = restTemplate.getForObject("http://localhost:" + port + "/actuator/prometheus", String.class);
+        assertMetric(scrape, "^appointment_booking_conflicts_total\\{operation=\"single\",?} 1\\.0$");
+        assertMetric(scrape, "^appointment_validation_failures_total\\{source=\"request\",?} 1\\.0$");
+        assertMetric(scrape, "^http_server_requests_seconds_bucket\\{.*uri=\"/api/appointments\"");
+        assertMetric(scrape, "^repository_invocations_seconds_bucket\\{exception=\"none\",method=\"save\",repository=\"AppointmentRepository\"");
+        assertMetric(scrape, "^hibernate_statements_total");
+        assertMetric(scrape, "^hikaricp_connections_active");
+    }
+}
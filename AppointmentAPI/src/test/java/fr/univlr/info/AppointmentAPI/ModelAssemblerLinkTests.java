@@ -0,0 +1,72 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.controller.AppointmentController;
+import fr.univlr.info.AppointmentAPIV1.controller.DoctorController;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.AppointmentModelAssembler;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.model.DoctorModelAssembler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.hateoas.Links;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+/**
+ * Checks that the links expanded from the precomputed templates are the ones linkTo builds
+ * The links are compared as rendered (href and relation): linkTo also adds affordances, which HAL doesn't render.
+ */
+public class ModelAssemblerLinkTests {
+
+    private final AppointmentModelAssembler apptAssembler = new AppointmentModelAssembler();
+    private final DoctorModelAssembler doctorAssembler = new DoctorModelAssembler();
+
+    private static void request(String host, int port) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServerName(host);
+        request.setServerPort(port);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testAppointmentLinks() {
+        Appointment future = new Appointment(7L, "jdoe", new Date(System.currentTimeMillis() + 3600000),
+                new Date(System.currentTimeMillis() + 7200000), "patient");
+        Appointment past = new Appointment(8L, "jdoe", new Date(0), new Date(3600000), "patient");
+        for (String host : new String[]{"localhost", "api.example.org"}) {
+            request(host, 8080);
+            Links expected = Links.of(
+                    linkTo(methodOn(AppointmentController.class).one(7L, null)).withSelfRel(),
+                    linkTo(methodOn(AppointmentController.class).all(null, null, null, null)).withRel("appointments"),
+                    linkTo(methodOn(AppointmentController.class).cancel(7L, null)).withRel("cancel"));
+            assertEquals(expected.toString(), apptAssembler.toModel(future).getLinks().toString());
+            assertEquals(linkTo(methodOn(AppointmentController.class).one(8L, null)).withSelfRel().toString(),
+                    apptAssembler.toModel(past).getRequiredLink("self").toString());
+            assertFalse(apptAssembler.toModel(past).getLink("cancel").isPresent());
+        }
+    }
+
+    @Test
+    public void testDoctorLinks() {
+        for (String name : new String[]{"jdoe", "jean dupré"}) {
+            request("localhost", 8080);
+            Links expected = Links.of(
+                    linkTo(methodOn(DoctorController.class).getDoctorByName(name, null, null)).withSelfRel(),
+                    linkTo(methodOn(DoctorController.class).all(null, null, null)).withRel("doctors"),
+                    linkTo(methodOn(DoctorController.class).getDoctorAppointments(name, null, null)).withRel("appointments"));
+            assertEquals(expected.toString(), doctorAssembler.toModel(new Doctor(name)).getLinks().toString());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Links;
+import org.springframework.hateoas.server.core.TypeReferences;
+import org.springframework.http.*;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keyset pagination of the appointment and doctor collections
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.name=pagination")
+@DirtiesContext
+public class PaginationTests {
+    private static final int APPOINTMENTS = 5;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        restTemplate.delete("http://localhost:" + port + "/api/appointments");
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        for (int i = 0; i < APPOINTMENTS; i++) {
+            Date start = calendar.getTime();
+            calendar.add(Calendar.HOUR, 1);
+            restTemplate.postForEntity("http://localhost:" + port + "/api/appointments",
+                    new Appointment("mjones", start, calendar.getTime(), "patient" + i), Appointment.class);
+        }
+    }
+
+    @Test
+    public void testAppointmentPagesWithLinkHeader() {
+        List<Long> ids = new ArrayList<>();
+        String url = "http://localhost:" + port + "/api/appointments?limit=2";
+        int pages = 0;
+        while (url != null) {
+            ResponseEntity<Appointment[]> response = restTemplate.getForEntity(url, Appointment[].class);
+            assertSame(response.getStatusCode(), HttpStatus.OK);
+            Appointment[] page = response.getBody();
+            assertNotNull(page);
+            assertTrue(page.length <= 2);
+            for (Appointment appt : page) {
+                ids.add(appt.getId());
+            }
+            String linkHeader = response.getHeaders().getFirst(HttpHeaders.LINK);
+            url = linkHeader == null ? null : Links.parse(linkHeader).getRequiredLink(IanaLinkRelations.NEXT).getHref();
+            pages++;
+        }
+        assertEquals(3, pages);
+        assertEquals(APPOINTMENTS, ids.size());
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1) < ids.get(i));
+        }
+    }
+
+    @Test
+    public void testAppointmentPagesHAL() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Accept", "application/hal+json");
+        HttpEntity<String> request = new HttpEntity<>("", headers);
+        ResponseEntity<CollectionModel<EntityModel<Appointment>>> response = restTemplate.exchange(
+                "http://localhost:" + port + "/api/appointments?limit=3",
+                HttpMethod.GET, request, new TypeReferences.CollectionModelType<EntityModel<Appointment>>() {});
+        CollectionModel<EntityModel<Appointment>> first = response.getBody();
+        assertNotNull(first);
+        assertEquals(3, first.getContent().size());
+        Link next = first.getRequiredLink(IanaLinkRelations.NEXT);
+
+        response = restTemplate.exchange(next.getHref(), HttpMethod.GET, request,
+                new TypeReferences.CollectionModelType<EntityModel<Appointment>>() {});
+        CollectionModel<EntityModel<Appointment>> second = response.getBody();
+        assertNotNull(second);
+        assertEquals(APPOINTMENTS - 3, second.getContent().size());
+        assertFalse(second.hasLink(IanaLinkRelations.NEXT));
+    }
+
+    @Test
+    public void testDoctorPages() {
+        ResponseEntity<Doctor[]> response = restTemplate.getForEntity(
+                "http://localhost:" + port + "/api/doctors?limit=2", Doctor[].class);
+        Doctor[] page = response.getBody();
+        assertNotNull(page);
+        assertEquals(2, page.length);
+        String linkHeader = response.getHeaders().getFirst(HttpHeaders.LINK);
+        assertNotNull(linkHeader);
+        String next = Links.parse(linkHeader).getRequiredLink(IanaLinkRelations.NEXT).getHref();
+        assertTrue(next.contains("after=" + page[1].getId()));
+    }
+
+    @Test
+    public void testInvalidLimit() {
+        try {
+            restTemplate.getForEntity("http://localhost:" + port + "/api/doctors?limit=0", Doctor[].class);
+            fail("Invalid limit not detected");
+        } catch (HttpStatusCodeException e) {
+            assertSame(e.getStatusCode(), HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package fr.univlr.info.AppointmentAPI;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * The scenarios of {@link BinaryFormatTests}, against the reactive profile
+ */
+@ActiveProfiles("reactive")
+public class ReactiveBinaryFormatTests extends BinaryFormatTests {
+}
@@ -0,0 +1,114 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorCache;
+import fr.univlr.info.AppointmentAPIV1.store.StandInReplicator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the routing of the reads to the replica and of the read-your-writes window
+ * The stand-in replicator only runs when called, so the replica lags until then.
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.datasource.name=routing", "appointment.datasource.routing.enabled=true",
+                "appointment.datasource.routing.sticky-window=1h", "appointment.datasource.replica.lag=PT1H"})
+@DirtiesContext
+public class ReadWriteRoutingTests {
+    private static final long HOUR = 3600_000L;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private StandInReplicator replicator;
+
+    @Autowired
+    private DoctorCache doctorCache;
+
+    private String url(String path) {
+        return "http://localhost:" + port + "/api" + path;
+    }
+
+    @Test
+    public void testReadsGoToTheReplicaExceptAfterAWrite() throws Exception {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long base = calendar.getTimeInMillis();
+        ResponseEntity<Appointment> created = restTemplate.postForEntity(url("/appointments"),
+                new Appointment("routing", new Date(base), new Date(base + HOUR), "replicated"), Appointment.class);
+        String cookie = created.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+        assertNotNull(cookie);
+        Long id = created.getBody().getId();
+
+        // The replica hasn't received the appointment yet
+        HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () ->
+                restTemplate.getForEntity(url("/appointments/" + id), Appointment.class));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+        e = assertThrows(HttpStatusCodeException.class, () ->
+                restTemplate.getForEntity(url("/doctors/routing"), String.class));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+
+        // The client who wrote it reads from the primary
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.COOKIE, cookie.split(";", 2)[0]);
+        ResponseEntity<Appointment> mine = restTemplate.exchange(url("/appointments/" + id), HttpMethod.GET,
+                new HttpEntity<>(headers), Appointment.class);
+        assertEquals("replicated", mine.getBody().getPatient());
+
+        // Everyone reads it once replicated
+        replicator.replicate();
+        Appointment appt = restTemplate.getForObject(url("/appointments/" + id), Appointment.class);
+        assertEquals("replicated", appt.getPatient());
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity(url("/doctors/routing"), String.class).getStatusCode());
+    }
+
+    @Test
+    public void testDoctorStillReplicatingStaysCached() throws Exception {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 1);
+        long base = calendar.getTimeInMillis() + 48 * HOUR;
+        restTemplate.postForEntity(url("/appointments"),
+                new Appointment("replicating", new Date(base), new Date(base + HOUR), "patient"), Appointment.class);
+        Long id = doctorCache.findIdByName("replicating");
+        assertNotNull(id);
+
+        // Missing on the replica: not found yet, but the id read on the primary is kept
+        for (String path : new String[]{"/doctors/replicating", "/doctors/replicating/appointments",
+                "/doctors/replicating/appointments?includeArchived=true"}) {
+            HttpStatusCodeException e = assertThrows(HttpStatusCodeException.class, () ->
+                    restTemplate.getForEntity(url(path), String.class));
+            assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+            long misses = doctorCache.stats().missCount();
+            assertEquals(id, doctorCache.findIdByName("replicating"), path);
+            assertEquals(misses, doctorCache.stats().missCount(), path);    // Still in the cache
+        }
+
+        // Once replicated, the doctor is read by its cached id
+        replicator.replicate();
+        long hits = doctorCache.stats().hitCount();
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity(url("/doctors/replicating"), String.class).getStatusCode());
+        assertEquals(hits + 1, doctorCache.stats().hitCount());
+    }
+}
@@ -0,0 +1,62 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import fr.univlr.info.AppointmentAPIV1.store.DoctorRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks with H2 EXPLAIN that the lookups use the schema indexes
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "spring.datasource.name=schema")
+@DirtiesContext
+public class SchemaIndexTests {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class).toUpperCase();
+    }
+
+    @Test
+    public void testDoctorByNameUsesUniqueIndex() {
+        String plan = explain("SELECT * FROM doctor WHERE name = 'mjones'");
+        assertTrue(plan.contains("UK_DOCTOR_NAME"), plan);
+    }
+
+    @Test
+    public void testAppointmentsAfterDateUseStartDateIndex() {
+        String plan = explain("SELECT * FROM appointment WHERE start_date > TIMESTAMP '2021-01-01 00:00:00'");
+        assertTrue(plan.contains("IDX_APPOINTMENT_START"), plan);
+    }
+
+    @Test
+    public void testDoctorDateRangeUsesDoctorStartDateIndex() {
+        String plan = explain("SELECT id, start_date, end_date FROM appointment WHERE name = 1 AND start_date > TIMESTAMP '2021-01-01 00:00:00' ORDER BY start_date");
+        assertTrue(plan.contains("IDX_APPOINTMENT_DOCTOR_START"), plan);
+    }
+
+    @Test
+    public void testEndedAppointmentsUseEndDateIndex() {
+        String plan = explain("SELECT * FROM appointment WHERE end_date < TIMESTAMP '2021-01-01 00:00:00'");
+        assertTrue(plan.contains("IDX_APPOINTMENT_END"), plan);
+    }
+
+    @Test
+    public void testDuplicateDoctorRejected() {
+        assertThrows(DataIntegrityViolationException.class, () -> doctorRepository.save(new Doctor("mjones")));
+    }
+}
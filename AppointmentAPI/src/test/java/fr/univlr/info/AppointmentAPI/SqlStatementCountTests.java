@@ -0,0 +1,134 @@
+package fr.univlr.info.AppointmentAPI;
+
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import fr.univlr.info.AppointmentAPIV1.model.Doctor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.client.RestTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts the SQL statements run by a request, with the Hibernate statistics
+ */
+@SpringBootTest(classes = AppointmentApiApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@DirtiesContext
+public class SqlStatementCountTests {
+    private static boolean seeded = false;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (!seeded) {
+            // two appointments for each of the doctors created at startup
+            Calendar calendar = new GregorianCalendar();
+            calendar.add(Calendar.YEAR, 1);
+            for (String doctor : new String[]{"mjones", "jsmith", "jdoe"}) {
+                for (int i = 0; i < 2; i++) {
+                    Date start = calendar.getTime();
+                    calendar.add(Calendar.HOUR, 1);
+                    restTemplate.postForEntity("http://localhost:" + port + "/api/appointments",
+                            new Appointment(doctor, start, calendar.getTime(), "patient"), Appointment.class);
+                }
+            }
+            seeded = true;
+        }
+        statistics.clear();
+    }
+
+    private long statementsFor(String path, Class<?> type) {
+        statistics.clear();
+        restTemplate.getForObject("http://localhost:" + port + path, type);
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Test
+    public void testAllDoctorsInOneStatement() {
+        assertEquals(1, statementsFor("/api/doctors", Doctor[].class));
+    }
+
+    @Test
+    public void testPageOfDoctorsInTwoStatements() {
+        // one for the page, one for the appointments of all the doctors of the page
+        assertEquals(2, statementsFor("/api/doctors?limit=2", Doctor[].class));
+    }
+
+    @Test
+    public void testOneDoctorInOneStatement() {
+        assertEquals(1, statementsFor("/api/doctors/jsmith", Doctor.class));
+        // the second time the doctor id comes from the cache
+        assertEquals(1, statementsFor("/api/doctors/jsmith", Doctor.class));
+    }
+
+    @Test
+    public void testDoctorAppointmentsInOneStatement() {
+        assertEquals(1, statementsFor("/api/doctors/jdoe/appointments", Appointment[].class));
+    }
+
+    @Test
+    public void testAllAppointmentsInOneStatement() {
+        // the doctor of each appointment is not loaded
+        assertEquals(1, statementsFor("/api/appointments", Appointment[].class));
+    }
+
+    @Test
+    public void testAppointmentReadsLoadNoEntity() {
+        // the read endpoints return read-only copies, not managed entities
+        Appointment[] appts = restTemplate.getForObject("http://localhost:" + port + "/api/appointments", Appointment[].class);
+        assertEquals(1, statementsFor("/api/appointments/" + appts[0].getId(), Appointment.class));
+        assertEquals(1, statementsFor("/api/appointments?limit=2", Appointment[].class));
+        statistics.clear();
+        restTemplate.getForObject("http://localhost:" + port + "/api/appointments", Appointment[].class);
+        restTemplate.getForObject("http://localhost:" + port + "/api/doctors/jdoe/appointments", Appointment[].class);
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    public void testBookingInOneTransaction() {
+        Calendar calendar = new GregorianCalendar();
+        calendar.add(Calendar.YEAR, 2);
+        Date start = calendar.getTime();
+        calendar.add(Calendar.HOUR, 1);
+        // the doctor by id, the appointment insert, and a single commit
+        statistics.clear();
+        restTemplate.postForEntity("http://localhost:" + port + "/api/appointments",
+                new Appointment("mjones", start, calendar.getTime(), "patient"), Appointment.class);
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+        assertEquals(0, statistics.getEntityUpdateCount());
+        assertEquals(1, statistics.getTransactionCount());
+
+        // a new doctor: the doctor by name and both inserts, still one commit
+        statistics.clear();
+        restTemplate.postForEntity("http://localhost:" + port + "/api/appointments",
+                new Appointment("newdoctor", start, calendar.getTime(), "patient"), Appointment.class);
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(2, statistics.getEntityInsertCount());
+        assertEquals(1, statistics.getTransactionCount());
+    }
+}
@@ -0,0 +1,302 @@
+package fr.univlr.info.AppointmentAPI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.univlr.info.AppointmentAPIV1.AppointmentApiApplication;
+import fr.univlr.info.AppointmentAPIV1.model.Appointment;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Load test comparing the Tomcat platform thread pool with virtual threads (appointment.virtual-threads.enabled)
+ * Starts the API twice, on a datasource adding a latency to each database round trip, and drives the same
+ * traffic (reads of appointments and bookings) from many more clients than server.tomcat.threads.max.
+ * Reports the throughput and the p50/p99 latencies of each mode, and fails when a server error is returned
+ * or when virtual threads are slower than the platform threads.
+ * Tagged "load" and needs a Java 21 build: run with JAVA_HOME set to a JDK 21, which selects the java21 profile,
+ * and mvn -P load-test test -Dtest=VirtualThreadLoadTests
+ * The settings are the load.vt.* properties below, e.g. -Dload.vt.clients=2000 -Dload.vt.latency-ms=50
+ */
+@Tag("load")
+public class VirtualThreadLoadTests {
+    private static final long HOUR = 3600_000L;
+
+    // The number of concurrent clients
+    private final int clients = Integer.getInteger("load.vt.clients", 1000);
+    // The size of the connection pool, above the 200 Tomcat threads so that the pool is not the bottleneck
+    private final int poolSize = Integer.getInteger("load.vt.pool-size", 500);
+    // The latency added to each statement and commit, in milliseconds
+    private final int latency = Integer.getInteger("load.vt.latency-ms", 10);
+    // The number of doctors, the bookings of a doctor are serialized
+    private final int doctors = Integer.getInteger("load.vt.doctors", 100);
+    // The number of seeded appointments
+    private final int appointments = Integer.getInteger("load.vt.appointments", 2000);
+    // The percentage of bookings in the traffic, the others are reads
+    private final int bookingPercent = Integer.getInteger("load.vt.booking-percent", 10);
+    // The warm up duration, not measured
+    private final int warmupSeconds = Integer.getInteger("load.vt.warmup-seconds", 5);
+    // The measured duration
+    private final int durationSeconds = Integer.getInteger("load.vt.duration-seconds", 15);
+    // The minimum throughput of virtual threads, relative to the platform threads
+    private final double minSpeedup = Double.parseDouble(System.getProperty("load.vt.min-speedup", "1.0"));
+
+    @Test
+    public void testPlatformVersusVirtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need a Java 21 build");
+        Result platform = run(false);
+        Result virtual = run(true);
+
+        System.out.printf("%nVirtual thread load test: %d clients, %d ms per round trip, %d connections, %d s%n",
+                clients, latency, poolSize, durationSeconds);
+        System.out.printf("%-10s %8s %9s %9s %9s  %s%n", "threads", "requests", "req/s", "p50 ms", "p99 ms", "server errors");
+        platform.print("platform");
+        virtual.print("virtual");
+        System.out.printf("speedup %.2f%n%n", virtual.throughput() / platform.throughput());
+
+        assertEquals(0, platform.serverErrors.sum(), "platform threads returned server errors");
+        assertEquals(0, virtual.serverErrors.sum(), "virtual threads returned server errors");
+        assertTrue(virtual.throughput() >= minSpeedup * platform.throughput(),
+                String.format("virtual threads %.1f req/s < %.2f x platform threads %.1f req/s",
+                        virtual.throughput(), minSpeedup, platform.throughput()));
+    }
+
+    /**
+     * Starts the API, seeds it and sends the traffic
+     * @param virtualThreads whether the requests run on virtual threads
+     * @return the measures
+     */
+    private Result run(boolean virtualThreads) throws Exception {
+        String mode = virtualThreads ? "virtual" : "platform";
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                AppointmentApiApplication.class, SlowDataSourceConfiguration.class)
+                .properties("server.port=0",
+                        "spring.datasource.name=vt-" + mode,
+                        "spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                        "spring.datasource.hikari.connection-timeout=60000",
+                        "appointment.virtual-threads.enabled=" + virtualThreads,
+                        "load.vt.latency-ms=" + latency)
+                .run()) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            Client client = new Client("http://localhost:" + port + "/api", context.getBean(ObjectMapper.class));
+            client.seed();
+            client.send(warmupSeconds, new Result());    // Warm up, not measured
+            Result result = new Result();
+            result.elapsed = client.send(durationSeconds, result);
+            return result;
+        }
+    }
+
+    /**
+     * The clients of one run
+     */
+    private class Client {
+        // The root URI of the API
+        private final String root;
+        // The JSON mapper of the API
+        private final ObjectMapper mapper;
+        // The HTTP client, keeping a connection per client alive
+        private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        // The ids of the seeded appointments
+        private final List<Long> ids = new ArrayList<>();
+        // The next free slot of the doctors, the bookings go after the seeded appointments
+        private final AtomicLong nextSlot = new AtomicLong();
+        private final long base;
+
+        Client(String root, ObjectMapper mapper) {
+            this.root = root;
+            this.mapper = mapper;
+            Calendar calendar = new GregorianCalendar();
+            calendar.add(Calendar.YEAR, 1);
+            this.base = calendar.getTimeInMillis();
+        }
+
+        /**
+         * Seeds the appointments with the batch endpoint, one hour slots per doctor
+         */
+        void seed() throws Exception {
+            List<Appointment> batch = new ArrayList<>();
+            for (int i = 0; i < appointments; i++) {
+                long start = base + (i / doctors) * HOUR;
+                batch.add(new Appointment("doctor" + (i % doctors), new Date(start), new Date(start + HOUR), "patient" + i));
+            }
+            HttpResponse<String> response = http.send(post("/appointments/batch", batch), HttpResponse.BodyHandlers.ofString());
+            for (JsonNode result : mapper.readTree(response.body())) {
+                assertEquals(201, result.get("status").asInt(), result.toString());
+                ids.add(result.get("appointment").get("id").asLong());
+            }
+            nextSlot.set(appointments / doctors + 1);
+        }
+
+        /**
+         * Sends the traffic from all the clients
+         * @param seconds the duration
+         * @param result the measures
+         * @return the elapsed time, in nanoseconds
+         */
+        long send(int seconds, Result result) throws Exception {
+            ExecutorService executor = Executors.newFixedThreadPool(clients);
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        HttpRequest request = random.nextInt(100) < bookingPercent ? booking(random)
+                                : HttpRequest.newBuilder(URI.create(root + "/appointments/" + ids.get(random.nextInt(ids.size())))).build();
+                        long before = System.nanoTime();
+                        int status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        result.record(System.nanoTime() - before, status);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+            return elapsed;
+        }
+
+        private HttpRequest booking(ThreadLocalRandom random) throws Exception {
+            long start = base + nextSlot.getAndIncrement() * HOUR;
+            Appointment appt = new Appointment("doctor" + random.nextInt(doctors), new Date(start), new Date(start + HOUR), "load");
+            return post("/appointments", appt);
+        }
+
+        private HttpRequest post(String path, Object body) throws Exception {
+            return HttpRequest.newBuilder(URI.create(root + path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                    .build();
+        }
+    }
+
+    /**
+     * Latencies and server errors of one run
+     */
+    private static class Result {
+        // The latencies, in nanoseconds
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        // The number of 5xx responses
+        private final LongAdder serverErrors = new LongAdder();
+        // The measured duration, in nanoseconds
+        private long elapsed;
+
+        void record(long latency, int status) {
+            latencies.add(latency);
+            if (status >= 500) {
+                serverErrors.increment();
+            }
+        }
+
+        double throughput() {
+            return latencies.size() * 1e9 / elapsed;
+        }
+
+        void print(String threads) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            System.out.printf("%-10s %8d %9.1f %9.2f %9.2f  %d%n", threads, sorted.length, throughput(),
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), serverErrors.sum());
+        }
+
+        /**
+         * Computes a latency percentile, by the nearest rank method
+         * @param sorted the sorted latencies, in nanoseconds
+         * @param percentile the percentile, between 0 and 1
+         * @return the latency, in milliseconds
+         */
+        private static double percentile(long[] sorted, double percentile) {
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+
+    /**
+     * Adds a latency to each statement execution and commit, like a remote database
+     * The latency is spent before calling H2, so the sleeping thread holds no H2 monitor.
+     */
+    @Configuration
+    static class SlowDataSourceConfiguration {
+
+        @Bean
+        static BeanPostProcessor slowDataSourcePostProcessor(org.springframework.core.env.Environment environment) {
+            long latency = environment.getProperty("load.vt.latency-ms", Long.class, 10L);
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ? slow(bean, DataSource.class, latency) : bean;
+                }
+            };
+        }
+
+        /**
+         * Wraps a JDBC object
+         * The connections and statements it returns are wrapped too.
+         * @param target the JDBC object
+         * @param type its interface
+         * @param latency the latency, in milliseconds
+         * @return the wrapped JDBC object
+         */
+        private static Object slow(Object target, Class<?> type, long latency) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (isRoundTrip(method)) {
+                    Thread.sleep(latency);
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                Class<?> returned = method.getReturnType();
+                if (result != null && returned.isInterface()
+                        && (Connection.class.isAssignableFrom(returned) || Statement.class.isAssignableFrom(returned))) {
+                    return slow(result, returned, latency);
+                }
+                return result;
+            });
+        }
+
+        private static boolean isRoundTrip(Method method) {
+            return Statement.class.isAssignableFrom(method.getDeclaringClass()) && method.getName().startsWith("execute")
+                    || Connection.class.isAssignableFrom(method.getDeclaringClass()) && method.getName().equals("commit");
+        }
+    }
+}